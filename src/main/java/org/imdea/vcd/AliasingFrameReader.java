@@ -0,0 +1,139 @@
+package org.imdea.vcd;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.UnsafeByteOperations;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import org.imdea.vcd.pb.Proto.Reply;
+import org.imdea.vcd.util.SlabPool;
+import org.imdea.vcd.util.SlabPool.Slab;
+
+/**
+ * Frame reader that doesn't copy the message payloads.
+ *
+ * Bytes are read in bulk into a pooled slab, and the message of each commit
+ * is decoded with aliasing: its bytes fields are views on the slab. The
+ * decoded reply retains the slab, and whoever ends up with the message must
+ * release it (see getSlab in DecodedReply). The reader holds its own
+ * reference on the current slab: a slab is only reused once all the
+ * messages decoded from it were released, otherwise a new one is taken.
+ *
+ * Protobuf only aliases heap arrays, so slabs are heap buffers.
+ *
+ * @author Vitor Enes
+ */
+public class AliasingFrameReader implements FrameReader {
+
+    private static final int LENGTH_SIZE = 4;
+    private static final int SLAB_SIZE = 256 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final SlabPool pool;
+    private final ReplyDecoder decoder;
+
+    private Slab slab;
+    private ByteBuffer buffer;
+    // bytes in [readIndex, buffer.position()) are still to be parsed
+    private int readIndex;
+
+    public AliasingFrameReader(ReadableByteChannel channel) {
+        this(channel, new SlabPool(SLAB_SIZE));
+    }
+
+    public AliasingFrameReader(ReadableByteChannel channel, ReplyDecoder decoder) {
+        this(channel, new SlabPool(SLAB_SIZE), decoder);
+    }
+
+    public AliasingFrameReader(ReadableByteChannel channel, SlabPool pool) {
+        this(channel, pool, new ReplyDecoder());
+    }
+
+    public AliasingFrameReader(ReadableByteChannel channel, SlabPool pool, ReplyDecoder decoder) {
+        this.channel = channel;
+        this.pool = pool;
+        this.decoder = decoder;
+        use(pool.acquire(SLAB_SIZE));
+    }
+
+    @Override
+    public Reply read() throws IOException {
+        int length = nextFrame();
+        Reply reply = Reply.parseFrom(CodedInputStream.newInstance(this.slab.data(), this.readIndex, length));
+        this.readIndex += length;
+        return reply;
+    }
+
+    @Override
+    public DecodedReply readDecoded() throws IOException {
+        int length = nextFrame();
+        CodedInputStream in = UnsafeByteOperations.unsafeWrap(this.slab.data(), this.readIndex, length).newCodedInput();
+        in.enableAliasing(true);
+        DecodedReply reply = this.decoder.decode(in);
+        this.readIndex += length;
+
+        if (reply.hasCommit()) {
+            this.slab.retain();
+            reply.setSlab(this.slab);
+        }
+        return reply;
+    }
+
+    /**
+     * Makes sure the next frame is in the slab, and returns its length,
+     * with readIndex at its first byte.
+     */
+    private int nextFrame() throws IOException {
+        ensure(LENGTH_SIZE);
+        int length = this.buffer.getInt(this.readIndex);
+        ensure(LENGTH_SIZE + length);
+        this.readIndex += LENGTH_SIZE;
+        return length;
+    }
+
+    /**
+     * Make sure that at least n unread bytes are in the slab.
+     */
+    private void ensure(int n) throws IOException {
+        int available = this.buffer.position() - this.readIndex;
+        if (available >= n) {
+            return;
+        }
+
+        if (available == 0 && this.slab.refs() == 1) {
+            // nothing left to parse and no message points to the slab:
+            // reuse it from the start
+            this.buffer.clear();
+            this.readIndex = 0;
+        }
+
+        if (this.readIndex + n > this.buffer.capacity()) {
+            // move unread bytes to a slab that can hold n bytes;
+            // the old one goes back to the pool once all its messages
+            // are released
+            Slab next = this.pool.acquire(Math.max(n, SLAB_SIZE));
+            System.arraycopy(this.slab.data(), this.readIndex, next.data(), 0, available);
+            this.slab.release();
+            use(next);
+            this.buffer.position(available);
+        }
+
+        while (this.buffer.position() - this.readIndex < n) {
+            if (this.channel.read(this.buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private void use(Slab slab) {
+        this.slab = slab;
+        this.buffer = ByteBuffer.wrap(slab.data());
+        this.readIndex = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
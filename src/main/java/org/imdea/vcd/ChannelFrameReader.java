@@ -0,0 +1,155 @@
+package org.imdea.vcd;
+
+import com.google.protobuf.CodedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import org.imdea.vcd.pb.Proto.Reply;
+import org.imdea.vcd.util.BufferPool;
+
+/**
+ * Frame reader on top of a blocking channel.
+ *
+ * Bytes are read in bulk into a pooled direct buffer, and replies are
+ * parsed straight from that buffer, so no heap array is allocated per
+ * frame. A single CodedInputStream covers the bytes of each read from the
+ * channel, and each frame is parsed under a limit, so the stream isn't
+ * created again per frame either. When the space left in the current
+ * buffer can't hold the next frame, the unread bytes are moved to a fresh
+ * buffer from the pool and the old one is released.
+ *
+ * @author Vitor Enes
+ */
+public class ChannelFrameReader implements FrameReader {
+
+    private static final int LENGTH_SIZE = 4;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final BufferPool pool;
+    private final Decoder<DecodedReply> decoder;
+
+    private ByteBuffer buffer;
+    // bytes in [readIndex, buffer.position()) are still to be parsed
+    private int readIndex;
+    // if not null, over the bytes left to be parsed, at readIndex
+    private CodedInputStream in;
+
+    public ChannelFrameReader(ReadableByteChannel channel) {
+        this(channel, new BufferPool(BUFFER_SIZE));
+    }
+
+    public ChannelFrameReader(ReadableByteChannel channel, ReplyDecoder decoder) {
+        this(channel, new BufferPool(BUFFER_SIZE), decoder);
+    }
+
+    public ChannelFrameReader(ReadableByteChannel channel, BufferPool pool) {
+        this(channel, pool, new ReplyDecoder());
+    }
+
+    public ChannelFrameReader(ReadableByteChannel channel, BufferPool pool, ReplyDecoder decoder) {
+        this.channel = channel;
+        this.pool = pool;
+        this.decoder = decoder::decode;
+        this.buffer = pool.acquire(BUFFER_SIZE);
+        this.readIndex = 0;
+    }
+
+    @Override
+    public Reply read() throws IOException {
+        return readFrame(Reply::parseFrom);
+    }
+
+    @Override
+    public DecodedReply readDecoded() throws IOException {
+        return readFrame(this.decoder);
+    }
+
+    private interface Decoder<T> {
+
+        T decode(CodedInputStream in) throws IOException;
+    }
+
+    private <T> T readFrame(Decoder<T> decoder) throws IOException {
+        ensure(LENGTH_SIZE);
+        int length = this.buffer.getInt(this.readIndex);
+        ensure(LENGTH_SIZE + length);
+
+        if (this.in == null) {
+            this.in = input();
+        }
+
+        // restrict the stream to the frame while parsing
+        T reply;
+        try {
+            this.in.skipRawBytes(LENGTH_SIZE);
+            this.in.resetSizeCounter();
+            int limit = this.in.pushLimit(length);
+            reply = decoder.decode(this.in);
+            this.in.popLimit(limit);
+        } catch (IOException | RuntimeException e) {
+            // the stream is no longer at the start of a frame
+            this.in = null;
+            throw e;
+        }
+
+        this.readIndex += LENGTH_SIZE + length;
+        return reply;
+    }
+
+    /**
+     * Stream over the bytes left to be parsed.
+     */
+    private CodedInputStream input() {
+        int writeIndex = this.buffer.position();
+        this.buffer.limit(writeIndex);
+        this.buffer.position(this.readIndex);
+        try {
+            return CodedInputStream.newInstance(this.buffer);
+        } finally {
+            this.buffer.limit(this.buffer.capacity());
+            this.buffer.position(writeIndex);
+        }
+    }
+
+    /**
+     * Make sure that at least n unread bytes are in the buffer.
+     */
+    private void ensure(int n) throws IOException {
+        int available = this.buffer.position() - this.readIndex;
+        if (available >= n) {
+            return;
+        }
+        // the bytes (or the buffer) change, so a new stream is needed
+        this.in = null;
+
+        if (available == 0) {
+            // nothing left to parse: reuse the buffer from the start
+            this.buffer.clear();
+            this.readIndex = 0;
+        }
+
+        if (this.readIndex + n > this.buffer.capacity()) {
+            // move unread bytes to a buffer that can hold n bytes
+            ByteBuffer next = this.pool.acquire(Math.max(n, BUFFER_SIZE));
+            this.buffer.flip();
+            this.buffer.position(this.readIndex);
+            next.put(this.buffer);
+            this.pool.release(this.buffer);
+            this.buffer = next;
+            this.readIndex = 0;
+        }
+
+        while (this.buffer.position() - this.readIndex < n) {
+            if (this.channel.read(this.buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -59,8 +59,50 @@ public class Config {
     @Parameter(names = "-batch_wait")
     private Integer batchWait = 0; // if 0, batching is disabled
 
+    @Parameter(names = "-batch_wait_us")
+    private Integer batchWaitUs = 0; // if not 0, overrides -batch_wait
+
+    @Parameter(names = "-batch_max_size")
+    private Integer batchMaxSize = 1000;
+
+    @Parameter(names = "-batch_max_bytes")
+    private Integer batchMaxBytes = 1024 * 1024;
+
+    @Parameter(names = "-batch_adaptive", arity = 1)
+    private Boolean batchAdaptive = false;
+
     @Parameter(names = "-opt_delivery", arity = 1)
-    private Boolean optDelivery = true;
+    private Boolean optDelivery = true; // if false, conflicts are never checked: pure messages are ordered like writes
+
+    @Parameter(names = "-async", arity = 1)
+    private Boolean async = false; // if true, replies only complete submissions
+
+    @Parameter(names = "-nio", arity = 1)
+    private Boolean nio = false; // if true, replies are read from a SocketChannel
+
+    @Parameter(names = "-ring_capacity")
+    private Integer ringCapacity = 65536; // slots of each pipeline ring buffer
+
+    @Parameter(names = "-wait_strategy")
+    private String waitStrategy = "park"; // blocking, park, yield or spin
+
+    @Parameter(names = "-fused", arity = 1)
+    private Boolean fused = false; // if true, replies are parsed, queued and delivered by the reader thread
+
+    @Parameter(names = "-aliasing", arity = 1)
+    private Boolean aliasing = false; // if true, message data is not copied from the receive buffers (valid until the next read; ignored with -async)
+
+    @Parameter(names = "-delivery_engine")
+    private String deliveryEngine = "conf"; // how commits are ordered for delivery (conf: the ConfQueue, partitioned: a ConfQueue per color partition)
+
+    @Parameter(names = "-queue_partitions")
+    private Integer queuePartitions = 4; // number of color partitions (and threads) of the partitioned delivery engine (only with -opt_delivery)
+
+    @Parameter(names = "-precise_deps", arity = 1)
+    private Boolean preciseDeps = false; // if true, commits are ordered by their dep sets (instead of their conf clocks)
+
+    @Parameter(names = "-commits")
+    private String commits = "all"; // commit notifications: all, own (one per message written by this client, matched by from key) or none
 
     private Config() {
     }
@@ -173,14 +215,126 @@ public class Config {
         this.batchWait = Integer.parseInt(batchWait);
     }
 
+    public Integer getBatchWaitUs() {
+        return batchWaitUs > 0 ? batchWaitUs : batchWait * 1000;
+    }
+
+    public void setBatchWaitUs(String batchWaitUs) {
+        this.batchWaitUs = Integer.parseInt(batchWaitUs);
+    }
+
+    public Integer getBatchMaxSize() {
+        return batchMaxSize;
+    }
+
+    public void setBatchMaxSize(String batchMaxSize) {
+        this.batchMaxSize = Integer.parseInt(batchMaxSize);
+    }
+
+    public Integer getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    public void setBatchMaxBytes(String batchMaxBytes) {
+        this.batchMaxBytes = Integer.parseInt(batchMaxBytes);
+    }
+
+    public Boolean getBatchAdaptive() {
+        return batchAdaptive;
+    }
+
+    public void setBatchAdaptive(String batchAdaptive) {
+        this.batchAdaptive = Boolean.parseBoolean(batchAdaptive);
+    }
+
     public Boolean getBatching() {
-        return batchWait > 0;
+        return getBatchWaitUs() > 0;
     }
 
     public Boolean getOptDelivery() {
         return this.optDelivery;
     }
 
+    public Boolean getAsync() {
+        return this.async;
+    }
+
+    public void setAsync(String async) {
+        this.async = Boolean.parseBoolean(async);
+    }
+
+    public Boolean getNio() {
+        return this.nio;
+    }
+
+    public void setNio(String nio) {
+        this.nio = Boolean.parseBoolean(nio);
+    }
+
+    public Integer getRingCapacity() {
+        return this.ringCapacity;
+    }
+
+    public void setRingCapacity(String ringCapacity) {
+        this.ringCapacity = Integer.parseInt(ringCapacity);
+    }
+
+    public String getWaitStrategy() {
+        return this.waitStrategy;
+    }
+
+    public void setWaitStrategy(String waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    public Boolean getFused() {
+        return this.fused;
+    }
+
+    public void setFused(String fused) {
+        this.fused = Boolean.parseBoolean(fused);
+    }
+
+    public Boolean getAliasing() {
+        return this.aliasing;
+    }
+
+    public void setAliasing(String aliasing) {
+        this.aliasing = Boolean.parseBoolean(aliasing);
+    }
+
+    public String getDeliveryEngine() {
+        return this.deliveryEngine;
+    }
+
+    public void setDeliveryEngine(String deliveryEngine) {
+        this.deliveryEngine = deliveryEngine;
+    }
+
+    public Integer getQueuePartitions() {
+        return this.queuePartitions;
+    }
+
+    public void setQueuePartitions(String queuePartitions) {
+        this.queuePartitions = Integer.parseInt(queuePartitions);
+    }
+
+    public Boolean getPreciseDeps() {
+        return this.preciseDeps;
+    }
+
+    public void setPreciseDeps(String preciseDeps) {
+        this.preciseDeps = Boolean.parseBoolean(preciseDeps);
+    }
+
+    public String getCommits() {
+        return this.commits;
+    }
+
+    public void setCommits(String commits) {
+        this.commits = commits;
+    }
+
     public static Config parseArgs(String[] args) {
         Config config = new Config();
         config.doParseArgs(args);
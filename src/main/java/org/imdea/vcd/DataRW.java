@@ -1,30 +1,38 @@
 package org.imdea.vcd;
 
 import com.codahale.metrics.Timer;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.imdea.vcd.metrics.RWMetrics;
-import org.imdea.vcd.pb.Proto.Commit;
 import org.imdea.vcd.pb.Proto.Message;
 import org.imdea.vcd.pb.Proto.MessageSet;
-import org.imdea.vcd.pb.Proto.Reply;
-import org.imdea.vcd.queue.ConfQueue;
+import org.imdea.vcd.queue.Commit;
 import org.imdea.vcd.queue.ConfQueueBox;
+import org.imdea.vcd.queue.DeliveryEngine;
 import org.imdea.vcd.queue.clock.Clock;
 import org.imdea.vcd.queue.clock.Dot;
 import org.imdea.vcd.queue.clock.ExceptionSet;
-import org.imdea.vcd.queue.clock.MaxInt;
+import org.imdea.vcd.queue.clock.VClock;
 import org.imdea.vcd.util.Batch;
+import org.imdea.vcd.util.BatchPolicy;
+import org.imdea.vcd.util.SlabPool.Slab;
+import org.imdea.vcd.util.SpscRingBuffer;
 import org.imdea.vcd.util.Trace;
+import org.imdea.vcd.util.WaitStrategy;
 import redis.clients.jedis.Jedis;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,28 +41,95 @@ import java.util.logging.Logger;
  */
 public class DataRW {
 
-    private final DataInputStream in;
+    // which commit notifications the client gets
+    private enum Commits {
+        ALL, OWN, NONE;
+
+        static Commits create(String name) {
+            switch (name) {
+                case "all":
+                    return ALL;
+                case "own":
+                    return OWN;
+                case "none":
+                    return NONE;
+                default:
+                    throw new IllegalArgumentException("Commit notifications not supported: " + name);
+            }
+        }
+    }
+
+    private final FrameReader in;
     private final DataOutputStream out;
 
     private final LinkedBlockingQueue<Message> toWriter;
-    private final LinkedBlockingQueue<Optional<MessageSet>> toClient;
+    // the client is notified by two threads (the parser on commit, and the
+    // deliverer on delivery), so each gets its own ring
+    private final SpscRingBuffer<MessageSet> commits;
+    private final SpscRingBuffer<MessageSet> deliveries;
+    // a delivery polled while a commit was still to be read
+    private MessageSet delivery;
+    // with aliasing, the slabs of each delivered message set,
+    // released once the client reads the next one
+    private final SpscRingBuffer<List<Slab>> deliveredSlabs;
+    private final ConcurrentHashMap<Dot, Slab> slabs;
+    private List<Slab> toRelease;
+    private final WaitStrategy clientWait;
+    private final BooleanSupplier hasClientWork;
+    private volatile IOException failure;
+    private final ConcurrentHashMap<Message, Submission> submissions;
     private final Boolean batching;
+    private final Boolean async;
+    private final Boolean fused;
+    private final Boolean aliasing;
+    private final Commits notifyCommits;
+    // with -commits=own, the from keys of the messages written and not
+    // yet committed, with how many of them
+    private final ConcurrentHashMap<ByteString, Integer> ownKeys;
 
     private final Writer writer;
     private final SocketReader socketReader;
 
     public DataRW(DataInputStream in, DataOutputStream out, Config config) {
+        this(aliasing(config)
+                ? new AliasingFrameReader(Channels.newChannel(in), new ReplyDecoder(config.getPreciseDeps()))
+                : new StreamFrameReader(in, new ReplyDecoder(config.getPreciseDeps())), out, config);
+    }
+
+    public DataRW(FrameReader in, DataOutputStream out, Config config) {
+        if (config.getAsync() && in instanceof AliasingFrameReader) {
+            throw new IllegalArgumentException("Aliasing reader in async mode");
+        }
         this.in = in;
         this.out = out;
         this.toWriter = new LinkedBlockingQueue<>();
-        this.toClient = new LinkedBlockingQueue<>();
-        this.batching = batching(config.getBatchWait());
+        this.clientWait = WaitStrategy.create(config.getWaitStrategy());
+        this.commits = new SpscRingBuffer<>(config.getRingCapacity(), this.clientWait);
+        this.deliveries = new SpscRingBuffer<>(config.getRingCapacity(), this.clientWait);
+        this.deliveredSlabs = new SpscRingBuffer<>(config.getRingCapacity(), WaitStrategy.create(config.getWaitStrategy()));
+        this.slabs = new ConcurrentHashMap<>();
+        this.toRelease = Collections.emptyList();
+        this.hasClientWork = () -> !commits.isEmpty() || !deliveries.isEmpty() || failure != null;
+        this.submissions = new ConcurrentHashMap<>();
+        this.batching = config.getBatching();
+        this.async = config.getAsync();
+        this.fused = config.getFused();
+        this.aliasing = aliasing(config);
+        this.notifyCommits = Commits.create(config.getCommits());
+        this.ownKeys = new ConcurrentHashMap<>();
         this.writer = new Writer(this.out, this.toWriter, config);
-        this.socketReader = new SocketReader(this.in, this.toClient, config);
+        this.socketReader = new SocketReader(this.in, config);
+        RWMetrics.gauge("WaitStrategy", () -> config.getWaitStrategy());
     }
 
-    private boolean batching(Integer batchWait) {
-        return batchWait > 0;
+    /**
+     * Whether message data is aliased: in async mode, there's no read to
+     * tell when the client is done with a message set, so slabs would
+     * never be released (and a new one taken on every fill). Aliasing is
+     * then off, and data is copied.
+     */
+    static boolean aliasing(Config config) {
+        return config.getAliasing() && !config.getAsync();
     }
 
     public void start() {
@@ -72,17 +147,58 @@ public class DataRW {
         this.socketReader.interrupt();
         this.in.close();
         this.out.close();
+        failSubmissions(new IOException("Connection closed"));
     }
 
+    /**
+     * With aliasing, the message data in the returned set is only valid
+     * until the next call.
+     */
     public MessageSet read() throws IOException, InterruptedException {
-        Optional<MessageSet> result = this.toClient.take();
-        if (!result.isPresent()) {
-            throw new IOException();
+        if (this.aliasing) {
+            releaseSlabs(this.toRelease);
+            this.toRelease = Collections.emptyList();
+        }
+
+        int idle = 0;
+        while (true) {
+            // commits are polled first: the commit of a message is always
+            // pushed before its delivery
+            MessageSet result = this.commits.poll();
+            if (result != null) {
+                return result;
+            }
+            if (this.delivery != null) {
+                return delivered();
+            }
+            this.delivery = this.deliveries.poll();
+            if (this.delivery != null) {
+                // a commit may have been pushed after the first poll,
+                // before this delivery: it goes first
+                result = this.commits.poll();
+                return result != null ? result : delivered();
+            }
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            this.clientWait.idle(idle++, this.hasClientWork);
+        }
+    }
+
+    private MessageSet delivered() {
+        MessageSet result = this.delivery;
+        this.delivery = null;
+        if (this.aliasing) {
+            // pushed before the set
+            this.toRelease = this.deliveredSlabs.poll();
         }
-        return result.get();
+        return result;
     }
 
     public void write(Message message) throws IOException, InterruptedException {
+        if (this.notifyCommits == Commits.OWN) {
+            this.ownKeys.merge(message.getFrom(), 1, Integer::sum);
+        }
         if (this.batching) {
             toWriter.put(message);
         } else {
@@ -90,6 +206,20 @@ public class DataRW {
         }
     }
 
+    public Submission submit(Message message) throws IOException, InterruptedException {
+        Submission submission = new Submission(message);
+        if (this.submissions.putIfAbsent(message, submission) != null) {
+            throw new IllegalArgumentException("Message already in flight");
+        }
+        try {
+            write(message);
+        } catch (IOException e) {
+            this.submissions.remove(message);
+            throw e;
+        }
+        return submission;
+    }
+
     private void doWrite(Message message, DataOutputStream o) throws IOException {
         byte[] data = message.toByteArray();
         o.writeInt(data.length);
@@ -97,22 +227,149 @@ public class DataRW {
         o.flush();
     }
 
-    private void notifyFailureToClient(LinkedBlockingQueue<Optional<MessageSet>> toClient) throws InterruptedException {
-        toClient.put(Optional.empty());
+    private void notifyClient(MessageSet messageSet) throws InterruptedException {
+        if (!this.submissions.isEmpty()) {
+            completeSubmissions(messageSet);
+        }
+        // in async mode, nobody is reading from the client rings
+        if (!this.async) {
+            switch (messageSet.getStatus()) {
+                case COMMIT:
+                    MessageSet wanted = wantedCommits(messageSet);
+                    if (wanted != null) {
+                        this.commits.put(wanted);
+                    }
+                    break;
+                case DELIVERED:
+                    this.deliveries.put(messageSet);
+                    break;
+            }
+        }
+    }
+
+    private boolean wantsCommits() {
+        switch (this.notifyCommits) {
+            case ALL:
+                return true;
+            case OWN:
+                return !this.ownKeys.isEmpty();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the part of a COMMIT message set the client wants to be
+     * notified of, or null if none.
+     */
+    private MessageSet wantedCommits(MessageSet messageSet) {
+        switch (this.notifyCommits) {
+            case ALL:
+                return messageSet;
+            case OWN:
+                List<Message> own = null;
+                List<Message> messages = messageSet.getMessagesList();
+                for (int i = 0; i < messages.size(); i++) {
+                    Message message = messages.get(i);
+                    if (ownCommitted(message.getFrom())) {
+                        if (own != null) {
+                            own.add(message);
+                        }
+                    } else if (own == null) {
+                        // first message not from this client:
+                        // keep the previous ones
+                        own = new ArrayList<>(messages.subList(0, i));
+                    }
+                }
+                if (own == null) {
+                    return messageSet;
+                }
+                if (own.isEmpty()) {
+                    return null;
+                }
+                return MessageSet.newBuilder()
+                        .addAllMessages(own)
+                        .setStatus(MessageSet.Status.COMMIT)
+                        .build();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * True if a message with this from key was written and not yet
+     * committed: it's now committed.
+     */
+    private boolean ownCommitted(ByteString key) {
+        // only the parser removes keys, so it's still there after the check
+        if (!this.ownKeys.containsKey(key)) {
+            return false;
+        }
+        this.ownKeys.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+        return true;
+    }
+
+    private void completeSubmissions(MessageSet messageSet) {
+        for (Message message : messageSet.getMessagesList()) {
+            Submission submission;
+            switch (messageSet.getStatus()) {
+                case COMMIT:
+                    submission = this.submissions.get(message);
+                    if (submission != null) {
+                        submission.committed(messageSet);
+                    }
+                    break;
+                case DELIVERED:
+                    submission = this.submissions.remove(message);
+                    if (submission != null) {
+                        submission.delivered(messageSet);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private void failSubmissions(IOException e) {
+        for (Message message : this.submissions.keySet()) {
+            Submission submission = this.submissions.remove(message);
+            if (submission != null) {
+                submission.failed(e);
+            }
+        }
+    }
+
+    private void releaseSlabs(List<Slab> slabs) {
+        for (Slab slab : slabs) {
+            slab.release();
+        }
+    }
+
+    private void notifyFailureToClient(IOException e) {
+        failSubmissions(e);
+        this.failure = e;
+        this.clientWait.signal();
     }
 
     private class Writer extends Thread {
 
+        private static final int ADAPT_PERIOD = 64;
+
         private final Logger LOGGER = VCDLogger.init(Writer.class);
 
         private final LinkedBlockingQueue<Message> toWriter;
         private final DataOutputStream out;
-        private final Integer batchWait;
+        private final BatchPolicy policy;
 
         public Writer(DataOutputStream out, LinkedBlockingQueue<Message> toWriter, Config config) {
             this.out = out;
             this.toWriter = toWriter;
-            this.batchWait = config.getBatchWait();
+            this.policy = new BatchPolicy(
+                    TimeUnit.MICROSECONDS.toNanos(config.getBatchWaitUs()),
+                    config.getBatchMaxSize(),
+                    config.getBatchMaxBytes(),
+                    config.getBatchAdaptive()
+            );
+            RWMetrics.gauge("BatchWindow", () -> TimeUnit.NANOSECONDS.toMicros(policy.window()));
         }
 
         @Override
@@ -120,24 +377,55 @@ public class DataRW {
             LOGGER.log(Level.INFO, "Writer thread started...");
             try {
                 try {
+                    List<Message> ops = new ArrayList<>();
+                    int flushes = 0;
+                    // messages in the batches since the last adapt
+                    int batched = 0;
+
                     while (true) {
                         Message first = toWriter.take();
-                        List<Message> ops = new ArrayList<>();
-
-                        // wait, and drain the queue
-                        Thread.sleep(this.batchWait);
-                        toWriter.drainTo(ops);
-
+                        long deadline = System.nanoTime() + policy.window();
                         ops.add(first);
+                        int bytes = first.getSerializedSize();
+
+                        // collect messages until the batch is full
+                        // or the window expires
+                        while (!policy.full(ops.size(), bytes)) {
+                            Message next = toWriter.poll();
+                            if (next == null) {
+                                long remaining = deadline - System.nanoTime();
+                                if (remaining <= 0) {
+                                    break;
+                                }
+                                next = toWriter.poll(remaining, TimeUnit.NANOSECONDS);
+                                if (next == null) {
+                                    break;
+                                }
+                            }
+                            ops.add(next);
+                            bytes += next.getSerializedSize();
+                        }
 
                         // batch size metrics
                         RWMetrics.BATCH_SIZE.update(ops.size());
+                        batched += ops.size();
 
                         doWrite(Batch.pack(ops), this.out);
+                        ops.clear();
+
+                        // adapt window every once in a while, to the
+                        // batches since the last time
+                        if (policy.isAdaptive() && ++flushes % ADAPT_PERIOD == 0) {
+                            policy.adapt(
+                                    (double) batched / ADAPT_PERIOD,
+                                    RWMetrics.commitLatency()
+                            );
+                            batched = 0;
+                        }
                     }
                 } catch (IOException e) {
                     LOGGER.log(Level.SEVERE, e.toString(), e);
-                    notifyFailureToClient(toClient);
+                    notifyFailureToClient(e);
                 }
             } catch (InterruptedException e) {
                 LOGGER.log(Level.SEVERE, e.toString(), e);
@@ -149,20 +437,20 @@ public class DataRW {
     // parser -> queue runner
     // queue runner -> deliverer
     // deliverer -> client
+    //
+    // in fused mode, the socket reader runs the other stages inline
     private class SocketReader extends Thread {
 
         private final Logger LOGGER = VCDLogger.init(SocketReader.class);
 
-        private final DataInputStream in;
-        private final LinkedBlockingQueue<Optional<MessageSet>> toClient;
-        private final LinkedBlockingQueue<Reply> toParser;
+        private final FrameReader in;
+        private final SpscRingBuffer<DecodedReply> toParser;
         private final Parser parser;
 
-        public SocketReader(DataInputStream in, LinkedBlockingQueue<Optional<MessageSet>> toClient, Config config) {
+        public SocketReader(FrameReader in, Config config) {
             this.in = in;
-            this.toClient = toClient;
-            this.toParser = new LinkedBlockingQueue<>();
-            this.parser = new Parser(this.toClient, this.toParser, config);
+            this.toParser = new SpscRingBuffer<>(config.getRingCapacity(), WaitStrategy.create(config.getWaitStrategy()));
+            this.parser = new Parser(this.toParser, config);
         }
 
         public void close() {
@@ -173,29 +461,31 @@ public class DataRW {
         @Override
         public void run() {
             // start parser
-            this.parser.start();
+            if (!fused) {
+                this.parser.start();
+            }
 
             LOGGER.log(Level.INFO, "SocketReader thread started...");
 
             try {
                 try {
                     while (true) {
-                        int length = in.readInt();
-                        byte data[] = new byte[length];
-                        in.readFully(data, 0, length);
-                        Reply reply = Reply.parseFrom(data);
+                        DecodedReply reply = in.readDecoded();
 
                         if (reply.hasCommit()) {
                             // start execution
-                            Dot dot = Dot.dot(reply.getCommit().getDot());
-                            RWMetrics.startExecution(dot);
+                            RWMetrics.startExecution(reply.getDot());
                         }
 
-                        toParser.put(reply);
+                        if (fused) {
+                            parser.process(reply);
+                        } else {
+                            toParser.put(reply);
+                        }
                     }
                 } catch (IOException e) {
                     LOGGER.log(Level.SEVERE, e.toString(), e);
-                    notifyFailureToClient(toClient);
+                    notifyFailureToClient(e);
                 }
             } catch (InterruptedException e) {
                 LOGGER.log(Level.SEVERE, e.toString(), e);
@@ -209,19 +499,17 @@ public class DataRW {
 
         private final Logger LOGGER = VCDLogger.init(Parser.class);
 
-        private final LinkedBlockingQueue<Reply> toParser;
-        private final LinkedBlockingQueue<Optional<MessageSet>> toClient;
-        private final LinkedBlockingQueue<QueueRunnerMsg> toQueueRunner;
+        private final SpscRingBuffer<DecodedReply> toParser;
+        private final SpscRingBuffer<QueueRunnerMsg> toQueueRunner;
         private final QueueRunner queueRunner;
 
         private Jedis jedis = null;
         private String jedisKey = null;
 
-        public Parser(LinkedBlockingQueue<Optional<MessageSet>> toClient, LinkedBlockingQueue<Reply> toParser, Config config) {
+        public Parser(SpscRingBuffer<DecodedReply> toParser, Config config) {
             this.toParser = toParser;
-            this.toClient = toClient;
-            this.toQueueRunner = new LinkedBlockingQueue<>();
-            this.queueRunner = new QueueRunner(toClient, this.toQueueRunner, config);
+            this.toQueueRunner = new SpscRingBuffer<>(config.getRingCapacity(), WaitStrategy.create(config.getWaitStrategy()));
+            this.queueRunner = new QueueRunner(this.toQueueRunner, config);
             if (RECORD_TRACE) {
                 connectToRedis(config);
             }
@@ -244,7 +532,7 @@ public class DataRW {
             }
         }
 
-        private void pushToRedis(Dot dot, Clock<MaxInt> conf) {
+        private void pushToRedis(Dot dot, VClock conf) {
             String encoded = Trace.encode(dot, conf);
             if (this.jedis != null) {
                 jedis.rpush(jedisKey, encoded);
@@ -259,59 +547,85 @@ public class DataRW {
             LOGGER.log(Level.INFO, "Parser thread started...");
 
             try {
+                List<DecodedReply> msgs = new ArrayList<>();
+                int idle = 0;
                 while (true) {
-                    List<Reply> msgs = new ArrayList<>();
-                    toParser.drainTo(msgs);
-
-                    for (Reply reply : msgs) {
-                        switch (reply.getReplyCase()) {
-                            case INIT:
-                                // create committed clock
-                                Clock<ExceptionSet> committed = Clock.eclock(reply.getInit().getCommittedMap());
-
-                                // store trace in redis
-                                if (RECORD_TRACE) {
-                                    pushToRedis(committed);
-                                }
+                    msgs.clear();
+                    if (toParser.drainTo(msgs) == 0) {
+                        toParser.await(idle++);
+                        continue;
+                    }
+                    idle = 0;
 
-                                // send to queue runner
-                                QueueRunnerMsg initMsg = new QueueRunnerMsg(committed);
-                                toQueueRunner.add(initMsg);
-                                break;
+                    for (DecodedReply reply : msgs) {
+                        process(reply);
+                    }
+                }
+            } catch (InterruptedException | InvalidProtocolBufferException e) {
+                LOGGER.log(Level.SEVERE, e.toString(), e);
+            }
+        }
 
-                            case COMMIT:
-                                final Timer.Context parseContext = RWMetrics.PARSE.time();
+        public void process(DecodedReply reply) throws InterruptedException, InvalidProtocolBufferException {
+            // replies are decoded (and timed by the PARSE timer)
+            // by the socket reader
+            switch (reply.getType()) {
+                case INIT:
+                    Clock<ExceptionSet> committed = reply.getCommitted();
 
-                                // fetch dot, dep, message and conf
-                                Commit commit = reply.getCommit();
-                                Dot dot = Dot.dot(commit.getDot());
-                                Message message = commit.getMessage();
-                                Clock<MaxInt> conf = Clock.vclock(commit.getConfMap());
+                    // store trace in redis
+                    if (RECORD_TRACE) {
+                        pushToRedis(committed);
+                    }
 
-                                parseContext.stop();
+                    // send to queue runner
+                    QueueRunnerMsg initMsg = new QueueRunnerMsg(committed);
+                    forward(initMsg);
+                    break;
 
-                                // if commit, send notification to client
-                                // and forward it to dep queue thread
-                                toClient.put(Optional.of(Batch.unpack(commit.getMessage(), MessageSet.Status.COMMIT)));
-                                RWMetrics.endExecution0(dot);
+                case COMMIT:
+                    Dot dot = reply.getDot();
+                    Message message = reply.getMessage();
+                    VClock conf = reply.getConf();
 
-                                // store trace in redis
-                                if (RECORD_TRACE) {
-                                    pushToRedis(dot, conf);
-                                }
+                    if (aliasing && reply.getSlab() != null) {
+                        slabs.put(dot, reply.getSlab());
+                    }
 
-                                // send to queue runner
-                                QueueRunnerMsg commitMsg = new QueueRunnerMsg(dot, message, conf);
-                                toQueueRunner.add(commitMsg);
-                                break;
+                    // if commit, send notification to client
+                    // and forward it to dep queue thread
+                    // - if the client wants no commit notifications, the
+                    //   batch is only unpacked (here) to complete submissions
+                    // - the unpacked batch goes with the commit, so that it's
+                    //   not unpacked again on delivery
+                    List<Message> unpacked = null;
+                    if (wantsCommits() || !submissions.isEmpty()) {
+                        MessageSet messageSet = Batch.unpack(message, MessageSet.Status.COMMIT);
+                        unpacked = messageSet.getMessagesList();
+                        notifyClient(messageSet);
+                    }
+                    RWMetrics.endExecution0(dot);
 
-                            default:
-                                throw new RuntimeException("Reply type not supported:" + reply.getReplyCase());
-                        }
+                    // store trace in redis
+                    if (RECORD_TRACE) {
+                        pushToRedis(dot, conf);
                     }
-                }
-            } catch (InterruptedException | InvalidProtocolBufferException e) {
-                LOGGER.log(Level.SEVERE, e.toString(), e);
+
+                    // send to queue runner
+                    QueueRunnerMsg commitMsg = new QueueRunnerMsg(dot, message, conf, reply.getDep(), unpacked);
+                    forward(commitMsg);
+                    break;
+
+                default:
+                    throw new RuntimeException("Reply type not supported:" + reply.getType());
+            }
+        }
+
+        private void forward(QueueRunnerMsg msg) throws InterruptedException, InvalidProtocolBufferException {
+            if (fused) {
+                queueRunner.process(msg);
+            } else {
+                toQueueRunner.put(msg);
             }
         }
     }
@@ -322,18 +636,22 @@ public class DataRW {
         private Clock<ExceptionSet> committed;
         private Dot dot;
         private Message message;
-        private Clock<MaxInt> conf;
+        private VClock conf;
+        private Clock<ExceptionSet> dep;
+        private List<Message> unpacked;
 
         QueueRunnerMsg(Clock<ExceptionSet> committed) {
             this.isInit = true;
             this.committed = committed;
         }
 
-        QueueRunnerMsg(Dot dot, Message message, Clock<MaxInt> conf) {
+        QueueRunnerMsg(Dot dot, Message message, VClock conf, Clock<ExceptionSet> dep, List<Message> unpacked) {
             this.isInit = false;
             this.dot = dot;
             this.message = message;
             this.conf = conf;
+            this.dep = dep;
+            this.unpacked = unpacked;
         }
     }
 
@@ -341,24 +659,27 @@ public class DataRW {
 
         private final Logger LOGGER = VCDLogger.init(QueueRunner.class);
 
-        private final LinkedBlockingQueue<QueueRunnerMsg> toQueueRunner;
-        private final LinkedBlockingQueue<List<ConfQueueBox>> toDeliverer;
-        private final Boolean batching;
-        private final Boolean optDelivery;
+        private final SpscRingBuffer<QueueRunnerMsg> toQueueRunner;
+        private final SpscRingBuffer<List<ConfQueueBox>> toDeliverer;
         private final Deliverer deliverer;
 
-        private ConfQueue queue;
+        private final DeliveryEngine queue;
+        // commits to be added at once
+        private final List<Commit> commits = new ArrayList<>();
 
-        public QueueRunner(LinkedBlockingQueue<Optional<MessageSet>> toClient, LinkedBlockingQueue<QueueRunnerMsg> toQueueRunner, Config config) {
-            this.batching = batching(config.getBatchWait());
-            this.optDelivery = config.getOptDelivery();
+        public QueueRunner(SpscRingBuffer<QueueRunnerMsg> toQueueRunner, Config config) {
+            this.queue = DeliveryEngine.create(config);
+            RWMetrics.gauge("QueueColors", () -> this.queue.colors());
+            RWMetrics.gauge("QueueColorFootprint", () -> this.queue.colorFootprint());
+            RWMetrics.gauge("QueueFastPath", () -> this.queue.fastPathRate());
             this.toQueueRunner = toQueueRunner;
-            this.toDeliverer = new LinkedBlockingQueue<>();
-            this.deliverer = new Deliverer(toClient, this.toDeliverer);
+            this.toDeliverer = new SpscRingBuffer<>(config.getRingCapacity(), WaitStrategy.create(config.getWaitStrategy()));
+            this.deliverer = new Deliverer(this.toDeliverer);
         }
 
         public void close() {
             this.deliverer.interrupt();
+            this.queue.close();
         }
 
         @Override
@@ -369,47 +690,71 @@ public class DataRW {
             LOGGER.log(Level.INFO, "QueueRunner thread started...");
 
             try {
+                List<QueueRunnerMsg> msgs = new ArrayList<>();
+                int idle = 0;
                 while (true) {
-                    List<QueueRunnerMsg> msgs = new ArrayList<>();
-                    toQueueRunner.drainTo(msgs);
+                    msgs.clear();
+                    if (toQueueRunner.drainTo(msgs) == 0) {
+                        toQueueRunner.await(idle++);
+                        continue;
+                    }
+                    idle = 0;
 
+                    // add all at once, so that the engine can order them
+                    // together
                     for (QueueRunnerMsg msg : msgs) {
-                        if (msg.isInit) {
-                            // create delivery queue
-                            queue = new ConfQueue(msg.committed, this.batching, this.optDelivery);
-                        } else {
-                            // add to delivery queue
-                            RWMetrics.endExecution1(msg.dot);
-
-                            final Timer.Context queueAddContext = RWMetrics.QUEUE_ADD.time();
-                            queue.add(msg.dot, msg.message, msg.conf);
-                            queueAddContext.stop();
-
-                            final Timer.Context toDeliverContext = RWMetrics.TO_DELIVER.time();
-                            List<ConfQueueBox> toDeliver = queue.getToDeliver();
-                            if (!toDeliver.isEmpty()) {
-                                toDeliverer.put(toDeliver);
-                            }
-                            toDeliverContext.stop();
-
-                            RWMetrics.QUEUE_ELEMENTS.update(queue.elements());
-                        }
+                        collect(msg);
                     }
+                    addAll();
                 }
             } catch (InterruptedException | InvalidProtocolBufferException e) {
                 LOGGER.log(Level.SEVERE, e.toString(), e);
             }
         }
+
+        public void process(QueueRunnerMsg msg) throws InterruptedException, InvalidProtocolBufferException {
+            collect(msg);
+            addAll();
+        }
+
+        private void collect(QueueRunnerMsg msg) throws InterruptedException, InvalidProtocolBufferException {
+            if (msg.isInit) {
+                // add what was collected before, and init delivery queue
+                addAll();
+                queue.init(msg.committed);
+            } else {
+                RWMetrics.endExecution1(msg.dot);
+                commits.add(new Commit(msg.dot, msg.message, msg.conf, msg.dep, msg.unpacked));
+            }
+        }
+
+        private void addAll() throws InterruptedException, InvalidProtocolBufferException {
+            // add to delivery queue
+            final Timer.Context queueAddContext = RWMetrics.QUEUE_ADD.time();
+            List<ConfQueueBox> toDeliver = queue.addAll(commits);
+            queueAddContext.stop();
+            commits.clear();
+
+            if (!toDeliver.isEmpty()) {
+                final Timer.Context toDeliverContext = RWMetrics.TO_DELIVER.time();
+                if (fused) {
+                    deliverer.process(toDeliver);
+                } else {
+                    toDeliverer.put(toDeliver);
+                }
+                toDeliverContext.stop();
+            }
+
+            RWMetrics.QUEUE_ELEMENTS.update(queue.elements());
+        }
     }
 
     private class Deliverer extends Thread {
 
         private final Logger LOGGER = VCDLogger.init(Deliverer.class);
-        private final LinkedBlockingQueue<Optional<MessageSet>> toClient;
-        private final LinkedBlockingQueue<List<ConfQueueBox>> toDeliverer;
+        private final SpscRingBuffer<List<ConfQueueBox>> toDeliverer;
 
-        public Deliverer(LinkedBlockingQueue<Optional<MessageSet>> toClient, LinkedBlockingQueue<List<ConfQueueBox>> toDeliverer) {
-            this.toClient = toClient;
+        public Deliverer(SpscRingBuffer<List<ConfQueueBox>> toDeliverer) {
             this.toDeliverer = toDeliverer;
         }
 
@@ -417,40 +762,61 @@ public class DataRW {
         public void run() {
             LOGGER.log(Level.INFO, "Deliverer thread started...");
             try {
+                List<List<ConfQueueBox>> msgs = new ArrayList<>();
+                int idle = 0;
                 while (true) {
-                    List<List<ConfQueueBox>> msgs = new ArrayList<>();
-                    toDeliverer.drainTo(msgs);
+                    msgs.clear();
+                    if (toDeliverer.drainTo(msgs) == 0) {
+                        toDeliverer.await(idle++);
+                        continue;
+                    }
+                    idle = 0;
 
                     for (List<ConfQueueBox> toDeliver : msgs) {
+                        process(toDeliver);
+                    }
+                }
+            } catch (InterruptedException | InvalidProtocolBufferException e) {
+                LOGGER.log(Level.SEVERE, e.toString(), e);
+            }
+        }
 
-                        final Timer.Context deliverLoopContext = RWMetrics.DELIVER_LOOP.time();
-
-                        for (ConfQueueBox b : toDeliver) {
-                            for (Dot d : b.getDots()) {
-                                RWMetrics.endExecution2(d);
+        public void process(List<ConfQueueBox> toDeliver) throws InterruptedException, InvalidProtocolBufferException {
+            final Timer.Context deliverLoopContext = RWMetrics.DELIVER_LOOP.time();
+
+            for (ConfQueueBox b : toDeliver) {
+                List<Slab> boxSlabs = Collections.emptyList();
+                for (Dot d : b.getDots()) {
+                    RWMetrics.endExecution2(d);
+                    if (aliasing) {
+                        Slab slab = slabs.remove(d);
+                        if (slab != null) {
+                            if (boxSlabs.isEmpty()) {
+                                boxSlabs = new ArrayList<>();
                             }
+                            boxSlabs.add(slab);
+                        }
+                    }
+                }
 
-                            // create message set builder
-                            MessageSet.Builder builder = MessageSet.newBuilder();
-
-                            // update message set builder
-                            for (Message m : b.sortMessages()) {
-                                builder.addAllMessages(Batch.unpack(m));
-                            }
-                            // build message
-                            builder.setStatus(MessageSet.Status.DELIVERED);
-                            MessageSet messageSet = builder.build();
+                // create message set builder
+                MessageSet.Builder builder = MessageSet.newBuilder();
 
-                            // send it to client
-                            toClient.put(Optional.of(messageSet));
-                        }
+                // update message set builder
+                builder.addAllMessages(b.unpack());
+                // build message
+                builder.setStatus(MessageSet.Status.DELIVERED);
+                MessageSet messageSet = builder.build();
 
-                        deliverLoopContext.stop();
-                    }
+                // send it to client: with aliasing, the slabs are released
+                // once the client is done with the set
+                if (aliasing) {
+                    deliveredSlabs.put(boxSlabs);
                 }
-            } catch (InterruptedException | InvalidProtocolBufferException e) {
-                LOGGER.log(Level.SEVERE, e.toString(), e);
+                notifyClient(messageSet);
             }
+
+            deliverLoopContext.stop();
         }
     }
 }
@@ -0,0 +1,99 @@
+package org.imdea.vcd;
+
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.queue.clock.Clock;
+import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.queue.clock.ExceptionSet;
+import org.imdea.vcd.queue.clock.VClock;
+import org.imdea.vcd.util.SlabPool.Slab;
+
+/**
+ * A Reply as decoded by the ReplyDecoder: the clocks and the dot are
+ * already in the form used by the queue.
+ *
+ * @author Vitor Enes
+ */
+public class DecodedReply {
+
+    public enum Type {
+        INIT, COMMIT
+    }
+
+    private final Type type;
+
+    // init
+    private final Clock<ExceptionSet> committed;
+    private final int site;
+
+    // commit
+    private final Dot dot;
+    private final Message message;
+    private final VClock conf;
+    // null unless deps are decoded
+    private final Clock<ExceptionSet> dep;
+    // if the message aliases a receive slab, the reference to release
+    // once it's no longer used
+    private Slab slab;
+
+    private DecodedReply(Type type, Clock<ExceptionSet> committed, int site, Dot dot, Message message, VClock conf, Clock<ExceptionSet> dep) {
+        this.type = type;
+        this.committed = committed;
+        this.site = site;
+        this.dot = dot;
+        this.message = message;
+        this.conf = conf;
+        this.dep = dep;
+    }
+
+    public static DecodedReply init(Clock<ExceptionSet> committed, int site) {
+        return new DecodedReply(Type.INIT, committed, site, null, null, null, null);
+    }
+
+    public static DecodedReply commit(Dot dot, Message message, VClock conf) {
+        return commit(dot, message, conf, null);
+    }
+
+    public static DecodedReply commit(Dot dot, Message message, VClock conf, Clock<ExceptionSet> dep) {
+        return new DecodedReply(Type.COMMIT, null, 0, dot, message, conf, dep);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public boolean hasCommit() {
+        return type == Type.COMMIT;
+    }
+
+    public Clock<ExceptionSet> getCommitted() {
+        return committed;
+    }
+
+    public int getSite() {
+        return site;
+    }
+
+    public Dot getDot() {
+        return dot;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public VClock getConf() {
+        return conf;
+    }
+
+    public Clock<ExceptionSet> getDep() {
+        return dep;
+    }
+
+    public Slab getSlab() {
+        return slab;
+    }
+
+    public void setSlab(Slab slab) {
+        this.slab = slab;
+    }
+}
@@ -0,0 +1,23 @@
+package org.imdea.vcd;
+
+import java.io.IOException;
+import org.imdea.vcd.pb.Proto.Reply;
+
+/**
+ * Reads length-prefixed replies from the server.
+ *
+ * Each frame is a 4-byte big-endian length followed by an encoded Reply.
+ *
+ * @author Vitor Enes
+ */
+public interface FrameReader {
+
+    Reply read() throws IOException;
+
+    /**
+     * Same as read, but decoded with a ReplyDecoder.
+     */
+    DecodedReply readDecoded() throws IOException;
+
+    void close() throws IOException;
+}
@@ -0,0 +1,272 @@
+package org.imdea.vcd;
+
+import com.codahale.metrics.Timer;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.imdea.vcd.metrics.RWMetrics;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.queue.clock.Clock;
+import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.queue.clock.ExceptionSet;
+import org.imdea.vcd.queue.clock.VClock;
+
+/**
+ * Decodes a Reply straight into a DecodedReply.
+ *
+ * The generated parser builds a map entry per node for the conf of each
+ * commit, which is then copied into a clock. Here the fields are read from
+ * the CodedInputStream and the seqs written directly in the clock, which is
+ * sized from the number of nodes seen in the previous commit. The message
+ * is still parsed by the generated code. The dep field is only decoded if
+ * asked for (to order commits by their precise dependencies).
+ *
+ * @author Vitor Enes
+ */
+public class ReplyDecoder {
+
+    // Reply
+    private static final int REPLY_INIT = 1;
+    private static final int REPLY_COMMIT = 3;
+    // Init
+    private static final int INIT_COMMITTED = 1;
+    private static final int INIT_SITE = 2;
+    // Commit
+    private static final int COMMIT_DOT = 1;
+    private static final int COMMIT_MESSAGE = 2;
+    private static final int COMMIT_DEP = 3;
+    private static final int COMMIT_CONF = 4;
+    // Dot, map entries and ExceptionSet
+    private static final int FIRST = 1;
+    private static final int SECOND = 2;
+
+    private static final ExtensionRegistryLite REGISTRY = ExtensionRegistryLite.getEmptyRegistry();
+
+    private final boolean deps;
+    private int nodeNumber = 0;
+
+    public ReplyDecoder() {
+        this(false);
+    }
+
+    public ReplyDecoder(boolean deps) {
+        this.deps = deps;
+    }
+
+    public DecodedReply decode(byte[] data) throws IOException {
+        return decode(CodedInputStream.newInstance(data));
+    }
+
+    public DecodedReply decode(CodedInputStream in) throws IOException {
+        final Timer.Context parseContext = RWMetrics.PARSE.time();
+        try {
+            DecodedReply reply = null;
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case REPLY_INIT:
+                        reply = readEmbedded(in, this::readInit);
+                        break;
+                    case REPLY_COMMIT:
+                        reply = readEmbedded(in, this::readCommit);
+                        break;
+                    default:
+                        in.skipField(tag);
+                }
+            }
+            if (reply == null) {
+                throw new InvalidProtocolBufferException("Reply type not supported");
+            }
+            return reply;
+        } finally {
+            parseContext.stop();
+        }
+    }
+
+    private DecodedReply readInit(CodedInputStream in) throws IOException {
+        HashMap<Integer, ExceptionSet> committed = new HashMap<>();
+        int site = 0;
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case INIT_COMMITTED:
+                    readExceptionSetEntry(in, committed);
+                    break;
+                case INIT_SITE:
+                    site = in.readInt32();
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        return DecodedReply.init(new Clock<>(committed), site);
+    }
+
+    /**
+     * Reads a map entry with a node id and an exception set into map.
+     */
+    private void readExceptionSetEntry(CodedInputStream in, HashMap<Integer, ExceptionSet> map) throws IOException {
+        readEmbedded(in, (CodedInputStream entry) -> {
+            int id = 0;
+            ExceptionSet exceptionSet = new ExceptionSet();
+            int t;
+            while ((t = entry.readTag()) != 0) {
+                switch (WireFormat.getTagFieldNumber(t)) {
+                    case FIRST:
+                        id = entry.readInt32();
+                        break;
+                    case SECOND:
+                        exceptionSet = readEmbedded(entry, this::readExceptionSet);
+                        break;
+                    default:
+                        entry.skipField(t);
+                }
+            }
+            map.put(id, exceptionSet);
+            return null;
+        });
+    }
+
+    private ExceptionSet readExceptionSet(CodedInputStream in) throws IOException {
+        long seq = 0;
+        List<Long> exceptions = new ArrayList<>();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case FIRST:
+                    seq = in.readInt64();
+                    break;
+                case SECOND:
+                    if (WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                        // packed
+                        int limit = in.pushLimit(in.readRawVarint32());
+                        while (in.getBytesUntilLimit() > 0) {
+                            exceptions.add(in.readInt64());
+                        }
+                        in.popLimit(limit);
+                    } else {
+                        exceptions.add(in.readInt64());
+                    }
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        return new ExceptionSet(seq, exceptions);
+    }
+
+    private DecodedReply readCommit(CodedInputStream in) throws IOException {
+        Dot dot = null;
+        Message message = Message.getDefaultInstance();
+        long[] conf = new long[this.nodeNumber];
+        int size = 0;
+        HashMap<Integer, ExceptionSet> dep = null;
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case COMMIT_DOT:
+                    dot = readEmbedded(in, this::readDot);
+                    break;
+                case COMMIT_MESSAGE:
+                    message = in.readMessage(Message.parser(), REGISTRY);
+                    break;
+                case COMMIT_DEP:
+                    if (this.deps) {
+                        if (dep == null) {
+                            dep = new HashMap<>();
+                        }
+                        readExceptionSetEntry(in, dep);
+                    } else {
+                        in.skipField(tag);
+                    }
+                    break;
+                case COMMIT_CONF:
+                    // map entry: node id and seq
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    int id = 0;
+                    long seq = 0;
+                    int t;
+                    while ((t = in.readTag()) != 0) {
+                        switch (WireFormat.getTagFieldNumber(t)) {
+                            case FIRST:
+                                id = in.readInt32();
+                                break;
+                            case SECOND:
+                                seq = in.readInt64();
+                                break;
+                            default:
+                                in.skipField(t);
+                        }
+                    }
+                    in.popLimit(limit);
+
+                    if (id >= conf.length) {
+                        conf = Arrays.copyOf(conf, id + 1);
+                    }
+                    conf[id] = seq;
+                    size = Math.max(size, id + 1);
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        if (dot == null) {
+            throw new InvalidProtocolBufferException("Commit without a dot");
+        }
+        if (size < conf.length) {
+            conf = Arrays.copyOf(conf, size);
+        }
+        this.nodeNumber = size;
+
+        Clock<ExceptionSet> depClock = null;
+        if (dep != null) {
+            // nodes without deps are not in the map
+            for (int id = 0; id < size; id++) {
+                dep.putIfAbsent(id, new ExceptionSet());
+            }
+            depClock = new Clock<>(dep);
+        }
+        return DecodedReply.commit(dot, message, new VClock(conf), depClock);
+    }
+
+    private Dot readDot(CodedInputStream in) throws IOException {
+        int id = 0;
+        long seq = 0;
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case FIRST:
+                    id = in.readInt32();
+                    break;
+                case SECOND:
+                    seq = in.readInt64();
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        return new Dot(id, seq);
+    }
+
+    private interface Reader<T> {
+
+        T read(CodedInputStream in) throws IOException;
+    }
+
+    /**
+     * Reads a length-delimited field with the given reader.
+     */
+    private static <T> T readEmbedded(CodedInputStream in, Reader<T> reader) throws IOException {
+        int limit = in.pushLimit(in.readRawVarint32());
+        T result = reader.read(in);
+        in.checkLastTagWas(0);
+        in.popLimit(limit);
+        return result;
+    }
+}
@@ -12,6 +12,9 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Semaphore;
@@ -52,13 +55,7 @@ public class Socket {
 
         for (int i = 0; i < retries; i++) {
             try {
-                java.net.Socket socket = new java.net.Socket(host, port + 1000);
-                socket.setTcpNoDelay(true);
-
-                DataInputStream in = new DataInputStream(socket.getInputStream());
-                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
-                DataRW rw = new DataRW(in, out, config);
-
+                DataRW rw = connect(host, port + 1000, config);
                 return new Socket(rw);
             } catch (java.net.ConnectException e) {
                 LOGGER.log(Level.INFO, "Failed to connect to static node. Trying again in 10ms.");
@@ -75,14 +72,29 @@ public class Socket {
         LOGGER.log(Level.INFO, "Closest node is {0}:{1}",
                 new String[]{closest.getIp(), String.valueOf(closest.getPort())});
 
-        java.net.Socket socket = new java.net.Socket(closest.getIp(), closest.getPort() + 1000);
-        socket.setTcpNoDelay(true);
+        DataRW rw = connect(closest.getIp(), closest.getPort() + 1000, config);
+        return new Socket(rw);
+    }
 
-        DataInputStream in = new DataInputStream(socket.getInputStream());
-        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
-        DataRW rw = new DataRW(in, out, config);
+    private static DataRW connect(String host, Integer port, Config config) throws IOException {
+        if (config.getNio()) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.socket().setTcpNoDelay(true);
+
+            ReplyDecoder decoder = new ReplyDecoder(config.getPreciseDeps());
+            FrameReader in = DataRW.aliasing(config)
+                    ? new AliasingFrameReader(channel, decoder)
+                    : new ChannelFrameReader(channel, decoder);
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+            return new DataRW(in, out, config);
+        } else {
+            java.net.Socket socket = new java.net.Socket(host, port);
+            socket.setTcpNoDelay(true);
 
-        return new Socket(rw);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            return new DataRW(in, out, config);
+        }
     }
 
     public static Socket create(Config config, int retries) throws IOException, InterruptedException {
@@ -105,6 +117,25 @@ public class Socket {
         this.rw.write(message);
     }
 
+    /**
+     * Send a message and return a handle that completes once the message is
+     * committed and delivered.
+     *
+     * Messages in flight are matched by equality, so they must be distinct.
+     * With -async=true, message sets are only used to complete handles, and
+     * {@link #receive()} only returns to report a failure.
+     */
+    public Submission sendAsync(Message message) throws IOException, InterruptedException {
+        return this.rw.submit(message);
+    }
+
+    /**
+     * Returns the next COMMIT or DELIVERED message set.
+     *
+     * With -commits=own, COMMIT sets only have the messages whose from was
+     * used by this socket, and with -commits=none, only DELIVERED sets are
+     * returned.
+     */
     public MessageSet receive() throws IOException, InterruptedException {
         return this.rw.read();
     }
@@ -0,0 +1,47 @@
+package org.imdea.vcd;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import org.imdea.vcd.pb.Proto.Reply;
+
+/**
+ * Frame reader on top of a blocking input stream.
+ *
+ * @author Vitor Enes
+ */
+public class StreamFrameReader implements FrameReader {
+
+    private final DataInputStream in;
+    private final ReplyDecoder decoder;
+
+    public StreamFrameReader(DataInputStream in) {
+        this(in, new ReplyDecoder());
+    }
+
+    public StreamFrameReader(DataInputStream in, ReplyDecoder decoder) {
+        this.in = in;
+        this.decoder = decoder;
+    }
+
+    @Override
+    public Reply read() throws IOException {
+        return Reply.parseFrom(readFrame());
+    }
+
+    @Override
+    public DecodedReply readDecoded() throws IOException {
+        return this.decoder.decode(readFrame());
+    }
+
+    private byte[] readFrame() throws IOException {
+        int length = in.readInt();
+        byte data[] = new byte[length];
+        in.readFully(data, 0, length);
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+}
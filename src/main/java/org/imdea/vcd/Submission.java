@@ -0,0 +1,59 @@
+package org.imdea.vcd;
+
+import java.util.concurrent.CompletableFuture;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.pb.Proto.MessageSet;
+
+/**
+ * Handle of a message sent with {@link Socket#sendAsync(Message)}.
+ *
+ * The commit future is completed with the first COMMIT message set that
+ * contains the message, and the delivery future with the DELIVERED message
+ * set that contains it (i.e. the message together with the messages
+ * delivered at the same time, in delivery order). Both futures are
+ * completed exceptionally if the connection fails.
+ *
+ * Callbacks attached with the non-async methods of CompletableFuture run
+ * in the threads of the delivery pipeline, so they should be short.
+ *
+ * @author Vitor Enes
+ */
+public class Submission {
+
+    private final Message message;
+    private final CompletableFuture<MessageSet> commit;
+    private final CompletableFuture<MessageSet> delivery;
+
+    public Submission(Message message) {
+        this.message = message;
+        this.commit = new CompletableFuture<>();
+        this.delivery = new CompletableFuture<>();
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public CompletableFuture<MessageSet> commit() {
+        return commit;
+    }
+
+    public CompletableFuture<MessageSet> delivery() {
+        return delivery;
+    }
+
+    void committed(MessageSet messageSet) {
+        this.commit.complete(messageSet);
+    }
+
+    void delivered(MessageSet messageSet) {
+        // if the commit notification was missed, delivery implies commit
+        this.commit.complete(messageSet);
+        this.delivery.complete(messageSet);
+    }
+
+    void failed(Throwable e) {
+        this.commit.completeExceptionally(e);
+        this.delivery.completeExceptionally(e);
+    }
+}
@@ -24,7 +24,16 @@ public class RWMetrics {
     private static final Timer EXECUTION1 = METRICS.timer(MetricRegistry.name("metrics", "Execution1"));
     private static final Timer EXECUTION2 = METRICS.timer(MetricRegistry.name("metrics", "Execution2"));
 
-    private static final Timer COMMIT = METRICS.timer(MetricRegistry.name("metrics", "COMMIT"));
+    // the latency of the last commits is also kept apart (see commitLatency)
+    private static final int RECENT_COMMITS = 1024;
+    private static final Histogram RECENT_COMMIT = new Histogram(new SlidingWindowReservoir(RECENT_COMMITS));
+    private static final Timer COMMIT = METRICS.register(MetricRegistry.name("metrics", "COMMIT"), new Timer() {
+        @Override
+        public void update(long duration, TimeUnit unit) {
+            super.update(duration, unit);
+            RECENT_COMMIT.update(unit.toNanos(duration));
+        }
+    });
     private static final Timer DELIVER = METRICS.timer(MetricRegistry.name("metrics", "DELIVER"));
 
     public static final Histogram QUEUE_ELEMENTS = METRICS.histogram(MetricRegistry.name("metrics", "QueueElements"));
@@ -80,4 +89,19 @@ public class RWMetrics {
     public static Timer.Context createDeliverContext() {
         return DELIVER.time();
     }
+
+    /**
+     * Mean latency of the last commits in nanoseconds, or zero if no commit
+     * was observed.
+     */
+    public static double commitLatency() {
+        return RECENT_COMMIT.getCount() > 0 ? RECENT_COMMIT.getSnapshot().getMean() : 0;
+    }
+
+    public static <T> void gauge(String name, Gauge<T> gauge) {
+        // on reconnect, the gauge of the new connection replaces the old one
+        String fullName = MetricRegistry.name("metrics", name);
+        METRICS.remove(fullName);
+        METRICS.register(fullName, gauge);
+    }
 }
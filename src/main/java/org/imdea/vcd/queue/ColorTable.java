@@ -0,0 +1,241 @@
+package org.imdea.vcd.queue;
+
+import com.google.protobuf.ByteString;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interns colors (the hashes of the messages) as small int ids.
+ *
+ * The colors of a message are kept as a sorted array of ids, so checking if
+ * two messages conflict is a merge of two arrays, instead of a hash lookup
+ * (of the full color bytes) per color.
+ *
+ * Each color is counted once per vertex that interned it, and removed once
+ * all of them are released: with a distinct color per client key, the
+ * table only has the colors of the vertices in the queue. Colors are found
+ * with open addressing and linear probing over an array of ids, which
+ * shrinks when most colors are removed, and the ids of removed colors are
+ * reused, so the arrays indexed by id are bounded by the highest number of
+ * colors in the queue at once.
+ *
+ * @author Vitor Enes
+ */
+public class ColorTable {
+
+    private static final int[] EMPTY = new int[0];
+    private static final int MIN_CAPACITY = 16;
+    // per color, besides its bytes: the ByteString and its array
+    private static final int COLOR_OVERHEAD = 48;
+
+    // id + 1 of the color in each slot, 0 if empty
+    private int[] slots;
+    private int mask;
+    // by id
+    private ByteString[] colors = new ByteString[MIN_CAPACITY];
+    private int[] refs = new int[MIN_CAPACITY];
+    // ids of removed colors, to be reused
+    private int[] free = new int[MIN_CAPACITY];
+    private int freeSize;
+    // ids handed out (live or free)
+    private int ids;
+    private int size;
+    private long colorBytes;
+
+    public ColorTable() {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Sorted ids of the colors, without duplicates. Each color is counted
+     * once, until released.
+     */
+    public int[] intern(List<ByteString> colors) {
+        if (colors.isEmpty()) {
+            return EMPTY;
+        }
+
+        int[] result = new int[colors.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = id(colors.get(i));
+        }
+
+        // sort and remove duplicates
+        int size = 1;
+        if (result.length > 1) {
+            Arrays.sort(result);
+            for (int i = 1; i < result.length; i++) {
+                if (result[i] != result[size - 1]) {
+                    result[size++] = result[i];
+                }
+            }
+        }
+        if (size < result.length) {
+            result = Arrays.copyOf(result, size);
+        }
+
+        for (int id : result) {
+            this.refs[id]++;
+        }
+        return result;
+    }
+
+    /**
+     * Releases colors returned by intern: the ones no longer used are
+     * removed.
+     */
+    public void release(int[] ids) {
+        for (int id : ids) {
+            if (--this.refs[id] == 0) {
+                remove(id);
+            }
+        }
+    }
+
+    /**
+     * Number of colors in use.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Approximate number of bytes used by the table.
+     */
+    public long footprint() {
+        // 4 bytes per slot; 8 + 4 + 4 per id
+        return 4L * this.slots.length + 16L * this.colors.length + this.colorBytes;
+    }
+
+    public void clear() {
+        allocate(MIN_CAPACITY);
+        this.colors = new ByteString[MIN_CAPACITY];
+        this.refs = new int[MIN_CAPACITY];
+        this.free = new int[MIN_CAPACITY];
+        this.freeSize = 0;
+        this.ids = 0;
+        this.size = 0;
+        this.colorBytes = 0;
+    }
+
+    /**
+     * True if the sorted arrays have an id in common.
+     */
+    public static boolean intersect(int[] a, int[] b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                return true;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+
+    private int id(ByteString color) {
+        int i = slot(color);
+        while (this.slots[i] != 0) {
+            int id = this.slots[i] - 1;
+            if (this.colors[id].equals(color)) {
+                return id;
+            }
+            i = (i + 1) & this.mask;
+        }
+
+        // new color
+        int id = this.freeSize > 0 ? this.free[--this.freeSize] : newId();
+        this.colors[id] = color;
+        this.slots[i] = id + 1;
+        this.colorBytes += color.size() + COLOR_OVERHEAD;
+        if (++this.size > maxSize(this.slots.length)) {
+            resize(this.slots.length * 2);
+        }
+        return id;
+    }
+
+    private int newId() {
+        if (this.ids == this.colors.length) {
+            this.colors = Arrays.copyOf(this.colors, this.ids * 2);
+            this.refs = Arrays.copyOf(this.refs, this.ids * 2);
+        }
+        return this.ids++;
+    }
+
+    private void remove(int id) {
+        ByteString color = this.colors[id];
+        int i = slot(color);
+        while (this.slots[i] != id + 1) {
+            i = (i + 1) & this.mask;
+        }
+        shiftBack(i);
+
+        this.colors[id] = null;
+        if (this.freeSize == this.free.length) {
+            this.free = Arrays.copyOf(this.free, this.freeSize * 2);
+        }
+        this.free[this.freeSize++] = id;
+        this.colorBytes -= color.size() + COLOR_OVERHEAD;
+
+        // shrink if mostly empty
+        if (--this.size < this.slots.length >>> 3 && this.slots.length > MIN_CAPACITY) {
+            resize(this.slots.length >>> 1);
+        }
+    }
+
+    /**
+     * Empty slot i, moving back the following entries that would no longer
+     * be found with slot i empty.
+     */
+    private void shiftBack(int i) {
+        int hole = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & this.mask;
+            int entry = this.slots[j];
+            if (entry == 0) {
+                break;
+            }
+            int home = slot(this.colors[entry - 1]);
+            // move it if its home slot is not in (hole, j]
+            if (((j - home) & this.mask) >= ((j - hole) & this.mask)) {
+                this.slots[hole] = entry;
+                hole = j;
+            }
+        }
+        this.slots[hole] = 0;
+    }
+
+    private void resize(int capacity) {
+        int[] oldSlots = this.slots;
+        allocate(capacity);
+        for (int entry : oldSlots) {
+            if (entry != 0) {
+                int j = slot(this.colors[entry - 1]);
+                while (this.slots[j] != 0) {
+                    j = (j + 1) & this.mask;
+                }
+                this.slots[j] = entry;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private int slot(ByteString color) {
+        // ByteString caches its hash
+        int h = color.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & this.mask;
+    }
+
+    private static int maxSize(int capacity) {
+        // load factor of 0.5
+        return capacity >>> 1;
+    }
+}
@@ -0,0 +1,64 @@
+package org.imdea.vcd.queue;
+
+import java.util.List;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.queue.clock.Clock;
+import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.queue.clock.ExceptionSet;
+import org.imdea.vcd.queue.clock.VClock;
+
+/**
+ * A committed message, to be added to a delivery engine.
+ *
+ * @author Vitor Enes
+ */
+public class Commit {
+
+    private final Dot dot;
+    private final Message message;
+    private final VClock conf;
+    private final Clock<ExceptionSet> dep;
+    private final List<Message> unpacked;
+
+    public Commit(Dot dot, Message message, VClock conf) {
+        this(dot, message, conf, null);
+    }
+
+    public Commit(Dot dot, Message message, VClock conf, Clock<ExceptionSet> dep) {
+        this(dot, message, conf, dep, null);
+    }
+
+    /**
+     * The dep clock is null if the precise dependencies of the dot are not
+     * known (see -precise_deps). The unpacked messages of the batch are
+     * null if it wasn't unpacked on commit; if not, they're delivered
+     * instead of unpacking it again.
+     */
+    public Commit(Dot dot, Message message, VClock conf, Clock<ExceptionSet> dep, List<Message> unpacked) {
+        this.dot = dot;
+        this.message = message;
+        this.conf = conf;
+        this.dep = dep;
+        this.unpacked = unpacked;
+    }
+
+    public Dot getDot() {
+        return dot;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public VClock getConf() {
+        return conf;
+    }
+
+    public Clock<ExceptionSet> getDep() {
+        return dep;
+    }
+
+    public List<Message> getUnpacked() {
+        return unpacked;
+    }
+}
@@ -1,6 +1,5 @@
 package org.imdea.vcd.queue;
 
-import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 
 import java.util.*;
@@ -9,34 +8,78 @@ import org.imdea.vcd.metrics.ClientMetrics;
 import org.imdea.vcd.pb.Proto.Message;
 import org.imdea.vcd.queue.clock.Clock;
 import org.imdea.vcd.queue.clock.Dot;
-import org.imdea.vcd.queue.clock.Dots;
 import org.imdea.vcd.queue.clock.ExceptionSet;
 import org.imdea.vcd.queue.clock.MaxInt;
+import org.imdea.vcd.queue.clock.VClock;
+import org.imdea.vcd.util.LongHashMap;
+import org.imdea.vcd.util.SeqWindow;
 
 /**
  * @author Vitor Enes
  */
-public class ConfQueue {
+public class ConfQueue implements DeliveryEngine {
 
-    private final HashMap<Dot, Vertex> vertexIndex = new HashMap<>();
-    private final HashMap<ByteString, HashSet<Vertex>> pendingIndex = new HashMap<>();
-    private List<ConfQueueBox> toDeliver = new ArrayList<>();
+    // no dot: packed dots are never negative
+    private static final long NONE = -1L;
 
-    private final Clock<ExceptionSet> delivered;
-    private final Integer N;
-    private final boolean TRANSITIVE;
+    // vertices by seq, per node (set on init)
+    private SeqWindow<Vertex>[] vertexIndex;
+    private int vertices;
+    // vertices blocked on each missing dot, keyed by packed dot
+    private final LongHashMap<List<Vertex>> waitingIndex = new LongHashMap<>();
+    private List<ConfQueueBox> toDeliver = new ArrayList<>();
+    private final TarjanSCCFinder finder = new TarjanSCCFinder();
+    private final ColorTable colorTable = new ColorTable();
+
+    // set on init
+    private Clock<ExceptionSet> delivered;
+    private Integer N;
+    private final boolean BATCHING;
+    // not final: off while a pure vertex is queued (see vertex)
+    private boolean transitive;
+    private int pureVertices;
     private final boolean OPT_DELIVERY;
+    // adds, and how many were delivered right away
+    private long adds;
+    private long fastPathHits;
 
     public ConfQueue(Integer nodeNumber, boolean batching, boolean optDelivery) {
         this(Clock.eclock(nodeNumber), batching, optDelivery);
     }
 
     public ConfQueue(Clock<ExceptionSet> committed, boolean batching, boolean optDelivery) {
+        this(batching, optDelivery);
+        init(committed);
+    }
+
+    /**
+     * The queue can only be used once initialized.
+     */
+    public ConfQueue(boolean batching, boolean optDelivery) {
+        this.BATCHING = batching;
+        this.OPT_DELIVERY = optDelivery;
+    }
+
+    @Override
+    public void init(Clock<ExceptionSet> committed) {
 //        ClientMetrics.queue("init;" + System.currentTimeMillis() + ";" + committed);
         this.delivered = (Clock<ExceptionSet>) committed.clone();
         this.N = this.delivered.size();
-        this.TRANSITIVE = isTransitive(batching);
-        this.OPT_DELIVERY = optDelivery;
+        this.transitive = isTransitive(this.BATCHING);
+        this.pureVertices = 0;
+        this.vertexIndex = newVertexIndex(this.N);
+        for (int i = 0; i < this.N; i++) {
+            this.vertexIndex[i] = new SeqWindow<>();
+        }
+        this.vertices = 0;
+        this.waitingIndex.clear();
+        this.colorTable.clear();
+        this.toDeliver = new ArrayList<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SeqWindow<Vertex>[] newVertexIndex(int n) {
+        return (SeqWindow<Vertex>[]) new SeqWindow<?>[n];
     }
 
     private boolean isTransitive(boolean batching) {
@@ -46,126 +89,313 @@ public class ConfQueue {
     }
 
     public boolean isEmpty() {
-        return vertexIndex.isEmpty();
+        return vertices == 0;
     }
 
     public void add(Dot dot, Message message, Clock<MaxInt> conf) throws InvalidProtocolBufferException {
-        // create vertex
-        Vertex vertex = new Vertex(dot, message, conf);
-//        ClientMetrics.queue("add;" + System.currentTimeMillis() + ";" + vertex.dot + ";" + Arrays.toString(vertex.colors.iterator().next().toByteArray()) + ";" + vertex.conf);
+        add(dot, message, new VClock(conf));
+    }
+
+    @Override
+    public void add(Dot dot, Message message, VClock conf) throws InvalidProtocolBufferException {
+        add(dot, message, conf, null);
+    }
 
-        // update indexes
-        updateIndexes(dot, vertex);
+    /**
+     * If dep is not null, the dependencies of the dot are the dots in dep
+     * (instead of all the dots in conf), and only those are visited.
+     */
+    @Override
+    public void add(Dot dot, Message message, VClock conf, Clock<ExceptionSet> dep) throws InvalidProtocolBufferException {
+        add(vertex(dot, message, conf, dep, null));
+    }
 
-        // try to find a SCC
-        Dots visited = new Dots();
-        Collection<ByteString> colors = findSCC(dot, vertex, visited);
-        tryPending(colors);
+    public void add(Commit commit) throws InvalidProtocolBufferException {
+        add(vertex(commit.getDot(), commit.getMessage(), commit.getConf(), commit.getDep(), commit.getUnpacked()));
     }
 
-    private void updateIndexes(Dot dot, Vertex vertex) {
-        vertexIndex.put(dot, vertex);
+    private void add(Vertex vertex) {
+        adds++;
+        List<Vertex> waiting;
+        if (depsDelivered(vertex)) {
+            fastPathHits++;
+            waiting = deliverAlone(vertex);
+        } else {
+            waiting = index(vertex);
 
-        for (ByteString color : vertex.colors) {
-            HashSet<Vertex> pending = pendingIndex.get(color);
+            // try to find a SCC
+            findSCC(vertex);
+        }
 
-            if (pending == null) {
-                // if not found for this color, create it
-                pending = new HashSet<>();
-                pending.add(vertex);
-                pendingIndex.put(color, pending);
+        // and retry the vertices that were waiting
+        if (waiting != null) {
+            tryWaiting(waiting);
+        }
+        restoreTransitive();
+    }
+
+    /**
+     * Adds all the vertices to the indexes before searching from any of
+     * them, so that a search doesn't stop at a dot that is in the batch
+     * but wasn't added yet (to be redone when it's added). Then searches
+     * once from each new vertex, and from each vertex that was waiting for
+     * one of them, if not delivered in the meantime.
+     */
+    @Override
+    public List<ConfQueueBox> addAll(List<Commit> commits) throws InvalidProtocolBufferException {
+        List<Vertex> affected = new ArrayList<>(commits.size());
+        for (Commit commit : commits) {
+            Vertex vertex = vertex(commit.getDot(), commit.getMessage(), commit.getConf(), commit.getDep(), commit.getUnpacked());
+            adds++;
+            List<Vertex> waiting;
+            if (depsDelivered(vertex)) {
+                fastPathHits++;
+                waiting = deliverAlone(vertex);
             } else {
-                // otherwise, just update it
-                pending.add(vertex);
+                waiting = index(vertex);
+                affected.add(vertex);
+            }
+            if (waiting != null) {
+                affected.addAll(waiting);
             }
         }
+        tryWaiting(affected);
+        restoreTransitive();
+        return getToDeliver();
+    }
+
+    /**
+     * Fraction of the adds (since the queue was created) delivered right
+     * away, without a search (see depsDelivered).
+     */
+    @Override
+    public double fastPathRate() {
+        return adds == 0 ? 0 : (double) fastPathHits / adds;
+    }
+
+    long adds() {
+        return adds;
+    }
+
+    long fastPathHits() {
+        return fastPathHits;
     }
 
-    private Collection<ByteString> findSCC(Dot dot, Vertex vertex, Dots visited) {
-        TarjanSCCFinder finder = new TarjanSCCFinder();
-        FinderResult res = finder.strongConnect(dot, vertex);
+    private Vertex vertex(Dot dot, Message message, VClock conf, Clock<ExceptionSet> dep, List<Message> unpacked) throws InvalidProtocolBufferException {
+        Vertex vertex = new Vertex(dot, message, conf, dep, unpacked);
+
+        // pure messages don't conflict with each other, so while there's
+        // one, the conflict relation is not transitive: a pure message and
+        // a write might both conflict with an older pure message, and the
+        // older one might be delivered after the newer one
+        // - the vertices before were added (and delivered) with the
+        //   transitive relation, and nothing depends on it after the search
+        // - without -opt_delivery conflicts are never checked, so purity
+        //   doesn't matter
+        if (vertex.pure) {
+            transitive = false;
+        }
+//        ClientMetrics.queue("add;" + System.currentTimeMillis() + ";" + vertex.dot + ";" + Arrays.toString(vertex.colors.iterator().next().toByteArray()) + ";" + vertex.conf);
+        return vertex;
+    }
 
-        // reset ids of stack
-        for (Vertex s : finder.getStack()) {
-            s.id = 0;
-            visited.add(s.dot);
+    /**
+     * Once no pure vertex is queued, the relation is transitive again: the
+     * pure vertices delivered were delivered after the writes they
+     * conflict with, so the highest dep of a node still covers the lower
+     * ones. Only called between searches.
+     */
+    private void restoreTransitive() {
+        if (pureVertices == 0) {
+            transitive = isTransitive(BATCHING);
         }
+    }
 
-        // create set of delivered colors
-        HashSet<ByteString> colors = new HashSet<>();
+    boolean transitive() {
+        return transitive;
+    }
 
-        // check if SCCs were found
-        switch (res) {
-            case FOUND:
-                List<Dots> sccs = finder.getSCCs();
-                for (Dots scc : sccs) {
-                    visited.addAll(scc);
-                    saveSCC(scc, colors);
+    /**
+     * True if all the dots the search would visit from the vertex (other
+     * than itself) were delivered: then the vertex is a SCC on its own.
+     * Checked against the delivered clock of each node, with the same
+     * dependencies as nextDep.
+     */
+    private boolean depsDelivered(Vertex vertex) {
+        int own = vertex.dot.getId();
+        long seq = vertex.dot.getSeq();
+        for (int q = 0; q < N; q++) {
+            long top = vertex.dep != null
+                    ? vertex.dep.get(q).current()
+                    : vertex.conf.get(q);
+            ExceptionSet d = delivered.get(q);
+            if (OPT_DELIVERY && transitive) {
+                // only the highest is visited
+                if (top != 0 && !d.contains(top) && !(q == own && top == seq)) {
+                    return false;
                 }
-                break;
-            default:
-                break;
+            } else if (q == own) {
+                // all but itself (and none after it, for simplicity)
+                if (top > seq || !d.containsAll(Long.min(top, seq - 1))) {
+                    return false;
+                }
+            } else if (!d.containsAll(top)) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        return colors;
+    /**
+     * Delivers the vertex without adding it to the indexes, and returns the
+     * vertices that were waiting for it, if any.
+     */
+    private List<Vertex> deliverAlone(Vertex vertex) {
+        delivered.addDot(vertex.key);
+        toDeliver.add(vertex.box);
+        return unblock(vertex.key);
+    }
+
+    /**
+     * Adds the vertex to the index, and returns the vertices that were
+     * waiting for it, if any.
+     */
+    private List<Vertex> index(Vertex vertex) {
+        vertexIndex[vertex.dot.getId()].put(vertex.dot.getSeq(), vertex);
+        vertices++;
+        if (vertex.pure) {
+            pureVertices++;
+        }
+        return unblock(vertex.key);
     }
 
-    private void saveSCC(Dots scc, HashSet<ByteString> colors) {
-        // update delivered
-        delivered.addDots(scc);
+    /**
+     * The vertices that were waiting for this dot are no longer blocked on
+     * it: unblock them before the search, so that it doesn't stop at them.
+     */
+    private List<Vertex> unblock(long key) {
+        List<Vertex> waiting = waitingIndex.remove(key);
+        if (waiting != null) {
+            for (Vertex v : waiting) {
+                v.waitingOn = NONE;
+            }
+        }
+        return waiting;
+    }
 
-        // merge all boxes in SCC
-        // - remove from index along the way
-        Iterator<Dot> it = scc.iterator();
-        Dot member = it.next();
-        ConfQueueBox merged = deleteMember(member, colors);
-
-        while (it.hasNext()) {
-            member = it.next();
-            ConfQueueBox box = deleteMember(member, colors);
-            merged.merge(box);
+    /**
+     * The dots are ordered elsewhere, and don't conflict with any dot in
+     * this queue: they're considered delivered, so that they're never
+     * waited for. All but the dots of the commits given (about to be added
+     * here), so that the dots of a batch can be skipped with a single merge
+     * and a removal per dot added.
+     */
+    public void skipAll(Clock<ExceptionSet> dots, List<Commit> except) {
+        delivered.merge(dots);
+        for (Commit commit : except) {
+            delivered.removeDot(commit.getDot());
         }
 
-        // add to toDeliver list
-        toDeliver.add(merged);
+        // retry the vertices waiting on a dot now delivered
+        if (!waitingIndex.isEmpty()) {
+            List<Long> skipped = new ArrayList<>();
+            waitingIndex.forEachKey(key -> {
+                if (delivered.contains(key)) {
+                    skipped.add(key);
+                }
+            });
+            for (long key : skipped) {
+                tryWaiting(unblock(key));
+            }
+        }
     }
 
-    private ConfQueueBox deleteMember(Dot member, HashSet<ByteString> colors) {
-        Vertex vertex = vertexIndex.remove(member);
-//        ClientMetrics.queue("rmv;" + System.currentTimeMillis() + ";" + vertex.dot + ";" + Arrays.toString(vertex.colors.iterator().next().toByteArray()) + ";" + vertex.conf);
+    interface PendingConsumer {
 
-        // update set of delivered colors
-        colors.addAll(vertex.colors);
-        // update pending index
-        for (ByteString color : vertex.colors) {
-            pendingIndex.get(color).remove(vertex);
+        void accept(Commit commit) throws InvalidProtocolBufferException;
+    }
+
+    /**
+     * Calls the consumer with the commit of each vertex not yet delivered.
+     */
+    void forEachPending(PendingConsumer consumer) throws InvalidProtocolBufferException {
+        List<Vertex> pending = new ArrayList<>(vertices);
+        for (SeqWindow<Vertex> window : vertexIndex) {
+            window.forEachValue(pending::add);
         }
-        // return box
-        return vertex.box;
-    }
-
-    public void tryPending(Collection<ByteString> colors) {
-        Dots visited = new Dots();
-        if (OPT_DELIVERY) {
-            for (ByteString color : colors) {
-                HashSet<Vertex> pending = new HashSet<>(pendingIndex.get(color));
-                for (Vertex v : pending) {
-                    Dot d = v.dot;
-                    if (!visited.contains(d)) {
-                        findSCC(d, v, visited);
-                    }
+        for (Vertex v : pending) {
+            consumer.accept(new Commit(v.dot, v.message, v.conf, v.dep, v.unpacked));
+        }
+    }
+
+    private void findSCC(Vertex vertex) {
+        // SCCs are saved as soon as they're found: even if the search is
+        // then blocked, all their dependencies were either delivered or in
+        // previous SCCs
+        FinderResult res = finder.strongConnect(vertex);
+
+        // every vertex left in the stack depends on the missing dot,
+        // so they can't be delivered before it's added
+        if (res == FinderResult.MISSING_DEP) {
+            for (int i = 0; i < finder.stackSize; i++) {
+                Vertex s = finder.stack[i];
+                if (s.waitingOn == NONE) {
+                    waitOn(s, finder.missing);
                 }
             }
-        } else {
-            for (Dot d : delivered.nextDots()) {
-                Vertex v = vertexIndex.get(d);
-                if (v != null) {
-                    findSCC(d, v, visited);
-                }
+            finder.clearStack();
+        }
+    }
+
+    private void waitOn(Vertex vertex, long missing) {
+        vertex.waitingOn = missing;
+        List<Vertex> waiting = waitingIndex.get(missing);
+        if (waiting == null) {
+            waiting = new ArrayList<>();
+            waitingIndex.put(missing, waiting);
+        }
+        waiting.add(vertex);
+    }
+
+    private void tryWaiting(List<Vertex> waiting) {
+        for (Vertex v : waiting) {
+            // skip if delivered in the meantime, or if a previous search
+            // was blocked on a dot on which this vertex also depends
+            if (v.waitingOn == NONE && vertexIndex[v.dot.getId()].get(v.dot.getSeq()) == v) {
+                findSCC(v);
             }
         }
     }
 
+    private void saveSCC(Vertex[] members, int from, int to) {
+        // merge all boxes in SCC
+        // - update delivered and remove from index along the way
+        ConfQueueBox[] boxes = new ConfQueueBox[to - from];
+        for (int i = from; i < to; i++) {
+            Vertex member = members[i];
+            delivered.addDot(member.key);
+            vertexIndex[member.dot.getId()].remove(member.dot.getSeq());
+            vertices--;
+            if (member.pure) {
+                pureVertices--;
+            }
+            if (member.colors != null) {
+                colorTable.release(member.colors);
+            }
+//            ClientMetrics.queue("rmv;" + System.currentTimeMillis() + ";" + member.dot + ";" + Arrays.toString(member.colors.iterator().next().toByteArray()) + ";" + member.conf);
+
+            boxes[i - from] = member.box;
+        }
+
+        // add to toDeliver list
+        toDeliver.add(ConfQueueBox.merge(boxes));
+    }
+
+    @Override
+    public List<ConfQueueBox> drainDeliverable() {
+        return getToDeliver();
+    }
+
     public List<ConfQueueBox> getToDeliver() {
         // return current list to be delivered,
         // and create a new one
@@ -174,160 +404,272 @@ public class ConfQueue {
         return result;
     }
 
+    @Override
     public int elements() {
-        return vertexIndex.size();
+        return vertices;
+    }
+
+    @Override
+    public int colors() {
+        return colorTable.size();
+    }
+
+    @Override
+    public long colorFootprint() {
+        return colorTable.footprint();
     }
 
     private enum FinderResult {
-        FOUND, NOT_FOUND, MISSING_DEP
+        FOUND, MISSING_DEP
     }
 
     private class Vertex {
 
         private final Dot dot;
-        private final Clock<MaxInt> conf;
+        private final long key;
+        private final VClock conf;
+        // precise dependencies, if any
+        private final Clock<ExceptionSet> dep;
         private final ConfQueueBox box;
-        private final HashSet<ByteString> colors;
-        private Integer id;
-        private Integer low;
-        private Boolean onStack;
-
-        public Vertex(Dot dot, Message message, Clock<MaxInt> conf) throws InvalidProtocolBufferException {
+        private final Message message;
+        // the messages in its batch, if unpacked on commit
+        private final List<Message> unpacked;
+        // color ids, interned on the first conflict check
+        // (only needed if the conflict relation is not transitive)
+        private int[] colors;
+        // pure (read-only) messages don't conflict with each other
+        private final boolean pure;
+        // missing dot on which this vertex is waiting, if any
+        private long waitingOn = NONE;
+
+        // search state:
+        // - search in which the vertex was last visited
+        private long visit;
+        private int id;
+        private int low;
+        private boolean onStack;
+        // - next dependency to check: node, and seqs still to check
+        private int depId;
+        private long depSeq;
+        private long depFrom;
+
+        public Vertex(Dot dot, Message message, VClock conf, Clock<ExceptionSet> dep, List<Message> unpacked) throws InvalidProtocolBufferException {
             this.dot = dot;
+            this.key = dot.packed();
             this.conf = conf;
-            this.colors = new HashSet<>(message.getHashesList());
-            this.box = new ConfQueueBox(dot, message);
-            this.onStack = false;
+            this.dep = dep;
+            this.message = message;
+            this.unpacked = unpacked;
+            this.pure = message.getPure();
+            this.box = new ConfQueueBox(dot, message, unpacked);
         }
 
         public boolean conflict(Vertex v) {
-            for (ByteString s : colors) {
-                if (v.colors.contains(s)) {
-                    return true;
-                }
+            if (pure && v.pure) {
+                return false;
             }
-            return false;
+            return ColorTable.intersect(colors(), v.colors());
+        }
+
+        private int[] colors() {
+            if (colors == null) {
+                colors = colorTable.intern(message.getHashesList());
+            }
+            return colors;
         }
 
         @Override
         public int hashCode() {
-            return this.dot.hashCode();
+            return Long.hashCode(this.key);
         }
     }
 
     /**
-     * Find a SCC using Tarjan's algorithm.
+     * Find SCCs using Tarjan's algorithm.
      * <p>
      * https://github.com/NYU-NEWS/janus/blob/09372bd1de206f9e0f15712a9a171a349bdcf3c0/src/deptran/rococo/graph.h#L274-L314
+     * <p>
+     * The recursion is replaced by an explicit stack of the vertices being
+     * visited, each keeping the position of its dependency loop. Both stacks
+     * are reused across searches, and a vertex was visited in the current
+     * search iff its visit field matches the search number, so nothing needs
+     * to be reset between searches.
      */
     private class TarjanSCCFinder {
 
-        private final Deque<Vertex> stack = new ArrayDeque<>();
-        private Integer id = 0;
+        private static final int INITIAL_CAPACITY = 16;
+
+        // vertices being visited (the recursion)
+        private Vertex[] path = new Vertex[INITIAL_CAPACITY];
+        private int pathSize = 0;
+        // Tarjan's stack
+        private Vertex[] stack = new Vertex[INITIAL_CAPACITY];
+        private int stackSize = 0;
+
+        private long search = 0;
+        private int id = 0;
+        private long missing;
+
+        public FinderResult strongConnect(Vertex root) {
+            search++;
+            id = 0;
+            missing = NONE;
+            visit(root);
+
+            while (pathSize > 0) {
+                Vertex v = path[pathSize - 1];
+                Vertex w = nextDep(v);
+
+                if (missing != NONE) {
+                    // propagate missing dep
+                    clearPath();
+                    return FinderResult.MISSING_DEP;
+                }
 
-        private final List<Dots> sccs = new ArrayList<>();
+                if (w != null) {
+                    // if not visited, visit
+                    if (w.visit != search) {
+                        visit(w);
+                    } // if visited neighbor is on stack, min lows
+                    else if (w.onStack) {
+                        v.low = Math.min(v.low, w.id);
+                    }
+                    continue;
+                }
+
+                // all dependencies of v were visited
+                path[--pathSize] = null;
+
+                // if after visiting all neighbors, an SCC was found if
+                // good news: the SCC members are in the stack
+                if (v.id == v.low) {
+                    int from = stackSize;
+                    do {
+                        from--;
+                        stack[from].onStack = false;
+                    } while (stack[from] != v);
+
+                    saveSCC(stack, from, stackSize);
+                    Arrays.fill(stack, from, stackSize, null);
+                    stackSize = from;
+                }
 
-        public FinderResult strongConnect(Dot vd, Vertex v) {
-            // get conf
-            Clock<MaxInt> conf = v.conf;
+                // update the low of the vertex that visited v
+                if (pathSize > 0) {
+                    Vertex parent = path[pathSize - 1];
+                    parent.low = Math.min(parent.low, v.low);
+                }
+            }
+
+            return FinderResult.FOUND;
+        }
 
+        private void visit(Vertex v) {
             // update id
             id++;
             // set id and low
+            v.visit = search;
             v.id = id;
             v.low = id;
             v.onStack = true;
+            v.depId = -1;
+            v.depSeq = 0;
+            v.depFrom = 1;
 
-            // add to the stack
-            stack.push(v);
-
-            // for all deps
-            for (Integer q = 0; q < N; q++) {
-                Long to = conf.get(q).current();
-                Long from;
-                if (OPT_DELIVERY && TRANSITIVE) {
-                    from = to;
-                } else {
-                    from = delivered.get(q).next();
-                }
-                // start from dep to del (assuming we would give up, we give up faster this way)
-                for (; to >= from; to--) {
-                    Dot wd = new Dot(q, to);
+            // add to both stacks
+            if (pathSize == path.length) {
+                path = Arrays.copyOf(path, pathSize * 2);
+            }
+            path[pathSize++] = v;
+            if (stackSize == stack.length) {
+                stack = Arrays.copyOf(stack, stackSize * 2);
+            }
+            stack[stackSize++] = v;
+        }
 
-                    // ignore delivered
-                    // - we need to check delivered since the clock has exceptions
-                    if (delivered.contains(wd)) {
-                        continue;
+        /**
+         * Next dependency of v to be visited, or null if there are no more
+         * (or if one is missing, in which case missing is set).
+         */
+        private Vertex nextDep(Vertex v) {
+            while (true) {
+                // start from dep to del (assuming we would give up, we give up faster this way)
+                if (v.depSeq < v.depFrom) {
+                    // move to the next node
+                    v.depId++;
+                    if (v.depId == N) {
+                        return null;
                     }
-
-                    // find vertex
-                    Vertex w = vertexIndex.get(wd);
-                    if (w == null) {
-                        // NOT NECESSARILY A MISSING DEP (SINCE IT MIGHT NOT CONFLICT)
-                        // BUT WE CAN'T KNOW UNTIL WE SEE IT
-                        return FinderResult.MISSING_DEP;
-                    }
-
-                    // ignore non-conflicting commands
-                    if (OPT_DELIVERY && !TRANSITIVE && !v.conflict(w)) {
-                        // if transitive, then it conflicts for sure
-                        // since we're only checking the highest dep
-                        continue;
+                    v.depSeq = v.dep != null
+                            ? v.dep.get(v.depId).current()
+                            : v.conf.get(v.depId);
+                    if (OPT_DELIVERY && transitive) {
+                        // seqs start at 1: with 0, there's nothing to check
+                        v.depFrom = Long.max(v.depSeq, 1);
+                    } else {
+                        v.depFrom = delivered.get(v.depId).next();
                     }
+                    continue;
+                }
 
-                    // if not visited, visit
-                    if (w.id == 0) {
-                        FinderResult result = strongConnect(wd, w);
-
-                        switch (result) {
-                            case MISSING_DEP:
-                                // propagate missing dep
-                                return result;
-                            default:
-                                break;
-                        }
-                        v.low = Math.min(v.low, w.low);
+                int q = v.depId;
+                long seq = v.depSeq--;
 
-                    } // if visited neighbor is on stack, min lows
-                    else if (w.onStack) {
-                        v.low = Math.min(v.low, w.id);
+                // with precise deps, jump over the seqs that aren't deps
+                if (v.dep != null) {
+                    long previous = v.dep.get(q).previous(seq);
+                    if (previous != seq) {
+                        v.depSeq = previous;
+                        continue;
                     }
                 }
-            }
 
-            // if after visiting all neighbors, an SCC was found if
-            // good news: the SCC members are in the stack
-            if (Objects.equals(v.id, v.low)) {
-                Dots scc = new Dots();
-
-                for (Vertex s = stack.pop();; s = stack.pop()) {
-                    // remove from stack
-                    s.onStack = false;
+                // find vertex
+                // - vertices are removed once delivered, so only if there's
+                //   none we need to check delivered (the clock has exceptions)
+                Vertex w = vertexIndex[q].get(seq);
+                if (w == null) {
+                    // jump over delivered, to the next seq that isn't
+                    long undelivered = delivered.get(q).previousMissing(seq);
+                    if (undelivered != seq) {
+                        v.depSeq = undelivered;
+                        continue;
+                    }
 
-                    // add to SCC
-                    scc.add(s.dot);
+                    // NOT NECESSARILY A MISSING DEP (SINCE IT MIGHT NOT CONFLICT)
+                    // BUT WE CAN'T KNOW UNTIL WE SEE IT
+                    missing = Dot.pack(q, seq);
+                    return null;
+                }
 
-                    // exit if done
-                    if (s.dot.equals(vd)) {
-                        break;
-                    }
+                // ignore non-conflicting commands
+                if (OPT_DELIVERY && !transitive && !v.conflict(w)) {
+                    // if transitive, then it conflicts for sure
+                    // since we're only checking the highest dep
+                    continue;
                 }
 
-                // add scc to the set of sccs
-                sccs.add(scc);
+                // if it's waiting on a missing dot, so is v
+                if (w.waitingOn != NONE) {
+                    missing = w.waitingOn;
+                    return null;
+                }
 
-                return FinderResult.FOUND;
+                return w;
             }
-
-            return FinderResult.NOT_FOUND;
         }
 
-        private List<Dots> getSCCs() {
-            return this.sccs;
+        private void clearPath() {
+            Arrays.fill(path, 0, pathSize, null);
+            pathSize = 0;
         }
 
-        private Collection<Vertex> getStack() {
-            return this.stack;
+        private void clearStack() {
+            for (int i = 0; i < stackSize; i++) {
+                stack[i].onStack = false;
+                stack[i] = null;
+            }
+            stackSize = 0;
         }
     }
 }
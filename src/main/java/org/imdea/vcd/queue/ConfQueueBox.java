@@ -1,47 +1,254 @@
 package org.imdea.vcd.queue;
 
-import java.util.Collection;
-import java.util.Set;
-import java.util.TreeMap;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import org.imdea.vcd.pb.Proto.Message;
 import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.util.Batch;
 
 /**
+ * The messages of a SCC, sorted by dot.
+ *
+ * Most boxes have a single message, kept as is. Larger boxes keep the dots
+ * and the messages in two arrays, in the same order. The messages in the
+ * batch of each message, if unpacked on commit, are kept with it (so that
+ * it's not unpacked again on delivery).
  *
  * @author Vitor Enes
  */
 public class ConfQueueBox {
 
-    private final TreeMap<Dot, Message> map;
+    // small boxes are sorted in place
+    private static final int INSERTION_SORT_MAX = 16;
+
+    // a single message
+    private final Dot dot;
+    private final Message message;
+    private final List<Message> batch;
+    // or several, sorted by dot
+    private final Dot[] dots;
+    private final Message[] messages;
+    // (null if none was unpacked)
+    private final List<Message>[] batches;
 
     public ConfQueueBox(Dot dot, Message message) {
-        this.map = new TreeMap<>();
-        map.put(dot, message);
+        this(dot, message, null);
+    }
+
+    /**
+     * The batch is null if the message wasn't unpacked.
+     */
+    public ConfQueueBox(Dot dot, Message message, List<Message> batch) {
+        this.dot = dot;
+        this.message = message;
+        this.batch = batch;
+        this.dots = null;
+        this.messages = null;
+        this.batches = null;
     }
 
     public ConfQueueBox(ConfQueueBox box) {
-        this.map = new TreeMap<>(box.map);
+        this.dot = box.dot;
+        this.message = box.message;
+        this.batch = box.batch;
+        this.dots = box.dots == null ? null : box.dots.clone();
+        this.messages = box.messages == null ? null : box.messages.clone();
+        this.batches = box.batches == null ? null : box.batches.clone();
+    }
+
+    private ConfQueueBox(Dot[] dots, Message[] messages, List<Message>[] batches) {
+        this.dot = null;
+        this.message = null;
+        this.batch = null;
+        this.dots = dots;
+        this.messages = messages;
+        this.batches = batches;
+    }
+
+    /**
+     * Merges the boxes (each sorted by dot) into one: boxes are merged in
+     * pairs, then the results in pairs, and so on, so each message is
+     * moved log(boxes) times. Small boxes are just sorted.
+     */
+    public static ConfQueueBox merge(ConfQueueBox[] boxes) {
+        if (boxes.length == 1) {
+            return boxes[0];
+        }
+
+        // all messages
+        int size = 0;
+        boolean unpacked = false;
+        for (ConfQueueBox box : boxes) {
+            size += box.size();
+            unpacked |= box.batch != null || box.batches != null;
+        }
+        Dot[] dots = new Dot[size];
+        Message[] messages = new Message[size];
+        List<Message>[] batches = unpacked ? newBatches(size) : null;
+
+        if (size <= INSERTION_SORT_MAX) {
+            int n = 0;
+            for (ConfQueueBox box : boxes) {
+                n = box.copyTo(dots, messages, batches, n);
+            }
+            insertionSort(dots, messages, batches);
+            return new ConfQueueBox(dots, messages, batches);
+        }
+
+        // where each box starts
+        int[] runs = new int[boxes.length + 1];
+        int n = 0;
+        for (int i = 0; i < boxes.length; i++) {
+            runs[i] = n;
+            n = boxes[i].copyTo(dots, messages, batches, n);
+        }
+        runs[boxes.length] = n;
+
+        Dot[] dotsTmp = new Dot[size];
+        Message[] messagesTmp = new Message[size];
+        List<Message>[] batchesTmp = unpacked ? newBatches(size) : null;
+        int runCount = boxes.length;
+        while (runCount > 1) {
+            // merge each pair of runs (i, i + 1) into run i / 2
+            int merged = 0;
+            for (int i = 0; i < runCount; i += 2) {
+                int from = runs[i];
+                int to = runs[Math.min(i + 2, runCount)];
+                if (i + 1 < runCount) {
+                    mergeRuns(dots, messages, batches, from, runs[i + 1], to, dotsTmp, messagesTmp, batchesTmp);
+                } else {
+                    System.arraycopy(dots, from, dotsTmp, from, to - from);
+                    System.arraycopy(messages, from, messagesTmp, from, to - from);
+                    if (batches != null) {
+                        System.arraycopy(batches, from, batchesTmp, from, to - from);
+                    }
+                }
+                runs[merged++] = from;
+            }
+            runs[merged] = size;
+            runCount = merged;
+
+            // swap
+            Dot[] d = dots;
+            dots = dotsTmp;
+            dotsTmp = d;
+            Message[] m = messages;
+            messages = messagesTmp;
+            messagesTmp = m;
+            List<Message>[] b = batches;
+            batches = batchesTmp;
+            batchesTmp = b;
+        }
+        return new ConfQueueBox(dots, messages, batches);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Message>[] newBatches(int size) {
+        return (List<Message>[]) new List<?>[size];
+    }
+
+    private static void insertionSort(Dot[] dots, Message[] messages, List<Message>[] batches) {
+        for (int i = 1; i < dots.length; i++) {
+            Dot dot = dots[i];
+            Message message = messages[i];
+            List<Message> batch = batches == null ? null : batches[i];
+            int j = i - 1;
+            while (j >= 0 && dots[j].compareTo(dot) > 0) {
+                dots[j + 1] = dots[j];
+                messages[j + 1] = messages[j];
+                if (batches != null) {
+                    batches[j + 1] = batches[j];
+                }
+                j--;
+            }
+            dots[j + 1] = dot;
+            messages[j + 1] = message;
+            if (batches != null) {
+                batches[j + 1] = batch;
+            }
+        }
+    }
+
+    private static void mergeRuns(Dot[] dots, Message[] messages, List<Message>[] batches, int from, int mid, int to,
+            Dot[] dotsTo, Message[] messagesTo, List<Message>[] batchesTo) {
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            int next;
+            if (j == to || (i < mid && dots[i].compareTo(dots[j]) <= 0)) {
+                next = i++;
+            } else {
+                next = j++;
+            }
+            dotsTo[k] = dots[next];
+            messagesTo[k] = messages[next];
+            if (batches != null) {
+                batchesTo[k] = batches[next];
+            }
+        }
+    }
+
+    private int copyTo(Dot[] dots, Message[] messages, List<Message>[] batches, int at) {
+        if (this.dots == null) {
+            dots[at] = this.dot;
+            messages[at] = this.message;
+            if (batches != null) {
+                batches[at] = this.batch;
+            }
+            return at + 1;
+        }
+        System.arraycopy(this.dots, 0, dots, at, this.dots.length);
+        System.arraycopy(this.messages, 0, messages, at, this.messages.length);
+        if (this.batches != null) {
+            System.arraycopy(this.batches, 0, batches, at, this.batches.length);
+        }
+        return at + this.dots.length;
     }
 
-    public Set<Dot> getDots() {
-        return this.map.keySet();
+    /**
+     * Sorted dots.
+     */
+    public List<Dot> getDots() {
+        return this.dots == null
+                ? Collections.singletonList(this.dot)
+                : Arrays.asList(this.dots);
     }
 
-    public void merge(ConfQueueBox o) {
-        this.map.putAll(o.map);
+    /**
+     * Messages, in the order of their dots.
+     */
+    public List<Message> sortMessages() {
+        return this.messages == null
+                ? Collections.singletonList(this.message)
+                : Arrays.asList(this.messages);
     }
 
-    public Collection<Message> sortMessages() {
-        return this.map.values();
+    /**
+     * Messages in the batches, in the order of their dots. Batches
+     * unpacked on commit are not unpacked again.
+     */
+    public List<Message> unpack() throws InvalidProtocolBufferException {
+        if (this.dots == null) {
+            return this.batch != null ? this.batch : Batch.unpack(this.message);
+        }
+        List<Message> result = new ArrayList<>(this.messages.length);
+        for (int i = 0; i < this.messages.length; i++) {
+            List<Message> b = this.batches == null ? null : this.batches[i];
+            result.addAll(b != null ? b : Batch.unpack(this.messages[i]));
+        }
+        return result;
     }
 
     public int size() {
-        return this.map.size();
+        return this.dots == null ? 1 : this.dots.length;
     }
 
     @Override
     public String toString() {
-        return this.map.keySet().toString();
+        return getDots().toString();
     }
 
     @Override
@@ -0,0 +1,97 @@
+package org.imdea.vcd.queue;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.List;
+import org.imdea.vcd.Config;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.queue.clock.Clock;
+import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.queue.clock.ExceptionSet;
+import org.imdea.vcd.queue.clock.VClock;
+
+/**
+ * Orders committed messages for delivery.
+ *
+ * The engine is initialized with the dots already committed when the
+ * connection is established, and then commits are added one by one (or a
+ * few at once). After each add, the messages that can be delivered are
+ * drained, in delivery order: the messages of each box are delivered
+ * together.
+ *
+ * All methods are called from a single thread (engines may use others
+ * internally).
+ *
+ * @author Vitor Enes
+ */
+public interface DeliveryEngine {
+
+    void init(Clock<ExceptionSet> committed);
+
+    default void add(Dot dot, Message message, VClock conf) throws InvalidProtocolBufferException {
+        add(dot, message, conf, null);
+    }
+
+    /**
+     * The dep clock is null if the precise dependencies of the dot are not
+     * known (see -precise_deps).
+     */
+    void add(Dot dot, Message message, VClock conf, Clock<ExceptionSet> dep) throws InvalidProtocolBufferException;
+
+    List<ConfQueueBox> drainDeliverable();
+
+    /**
+     * Adds all the commits, and drains the messages that can be delivered.
+     */
+    default List<ConfQueueBox> addAll(List<Commit> commits) throws InvalidProtocolBufferException {
+        for (Commit commit : commits) {
+            add(commit.getDot(), commit.getMessage(), commit.getConf(), commit.getDep());
+        }
+        return drainDeliverable();
+    }
+
+    /**
+     * Number of messages added and not yet drained.
+     */
+    int elements();
+
+    /**
+     * Number of colors tracked for the messages not yet drained (zero if
+     * the engine doesn't track them).
+     */
+    default int colors() {
+        return 0;
+    }
+
+    /**
+     * Approximate number of bytes used to track those colors.
+     */
+    default long colorFootprint() {
+        return 0;
+    }
+
+    /**
+     * Fraction of the adds delivered right away, without ordering them
+     * against the messages not yet delivered (zero if the engine doesn't
+     * have such a fast path).
+     */
+    default double fastPathRate() {
+        return 0;
+    }
+
+    /**
+     * Releases the resources of the engine (e.g. its threads).
+     */
+    default void close() {
+    }
+
+    static DeliveryEngine create(Config config) {
+        switch (config.getDeliveryEngine()) {
+            case "conf":
+                return new ConfQueue(config.getBatching(), config.getOptDelivery());
+            case "partitioned":
+                return new PartitionedQueue(config.getQueuePartitions(), config.getBatching(), config.getOptDelivery());
+            default:
+                throw new IllegalArgumentException("Delivery engine not supported: " + config.getDeliveryEngine());
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package org.imdea.vcd.queue;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.queue.clock.Clock;
+import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.queue.clock.ExceptionSet;
+import org.imdea.vcd.queue.clock.VClock;
+
+/**
+ * Delivery engine that shards the commits by color across ConfQueues, each
+ * owned by a worker thread.
+ *
+ * Commits with colors in a single partition are only added to that
+ * partition's queue; the other partitions skip them (they don't conflict
+ * with anything there). The adds since the last drain are processed when
+ * drained: each partition adds its own commits, and skips the others with
+ * a single merge of the clock of the batch, so its work is proportional to
+ * its share of the batch. Batches of at least PARALLEL_THRESHOLD adds are
+ * processed by the partitions in parallel, smaller ones in the caller
+ * thread (handing them to the pool would cost more than the adds). The
+ * boxes of each partition are returned in order, so the delivery order per
+ * color is the one of its queue.
+ *
+ * A commit with colors in several partitions needs all of them: the
+ * messages not yet delivered are moved to a single queue, where the
+ * following commits are also added, until it's empty. Then commits are
+ * partitioned again.
+ *
+ * Partitioning needs -opt_delivery: without it, every dot in the conf of a
+ * commit is a dependency, whatever its colors, so commits are never
+ * partitioned and all go to the single queue.
+ *
+ * Only the owner thread calls the engine, except for the gauges (colors,
+ * colorFootprint and fastPathRate), which may be called by any thread:
+ * they return the values published by the owner after each drain.
+ *
+ * @author Vitor Enes
+ */
+public class PartitionedQueue implements DeliveryEngine {
+
+    // below this, the partitions are run in the caller thread
+    private static final int PARALLEL_THRESHOLD = 64;
+    private static final AtomicInteger POOLS = new AtomicInteger();
+
+    private final boolean batching;
+    private final boolean optDelivery;
+    private final int partitions;
+    private final ConfQueue[] queues;
+    private final ExecutorService pool;
+
+    // adds since the last drain, and the partition of each
+    private final List<Commit> batch = new ArrayList<>();
+    private int[] batchPartitions = new int[PARALLEL_THRESHOLD];
+    // delivered so far (by all partitions)
+    private Clock<ExceptionSet> delivered;
+    // if not null, all commits are added here
+    private ConfQueue single;
+    // fast path counters of the single queues dropped
+    private long singleAdds;
+    private long singleHits;
+    // boxes already found, to be drained
+    private List<ConfQueueBox> ready = new ArrayList<>();
+    // gauges, published after each drain
+    private volatile int colors;
+    private volatile long colorFootprint;
+    private volatile double fastPathRate;
+
+    public PartitionedQueue(int partitions, boolean batching, boolean optDelivery) {
+        this.batching = batching;
+        this.optDelivery = optDelivery;
+        this.partitions = partitions;
+        this.queues = new ConfQueue[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.queues[i] = new ConfQueue(batching, optDelivery);
+        }
+        int id = POOLS.incrementAndGet();
+        AtomicInteger threads = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(partitions, (Runnable r) -> {
+            Thread thread = new Thread(r, "QueuePartition-" + id + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void init(Clock<ExceptionSet> committed) {
+        this.delivered = new Clock<>(committed);
+        this.batch.clear();
+        this.single = null;
+        this.ready = new ArrayList<>();
+        if (!this.optDelivery) {
+            this.single = new ConfQueue(this.batching, false);
+            this.single.init(committed);
+        } else {
+            for (ConfQueue queue : this.queues) {
+                queue.init(committed);
+            }
+        }
+        publish();
+    }
+
+    @Override
+    public void add(Dot dot, Message message, VClock conf, Clock<ExceptionSet> dep) throws InvalidProtocolBufferException {
+        add(new Commit(dot, message, conf, dep));
+    }
+
+    @Override
+    public List<ConfQueueBox> addAll(List<Commit> commits) throws InvalidProtocolBufferException {
+        for (Commit commit : commits) {
+            add(commit);
+        }
+        return drainDeliverable();
+    }
+
+    private void add(Commit commit) throws InvalidProtocolBufferException {
+        if (this.single != null) {
+            this.single.add(commit);
+            return;
+        }
+
+        int partition = partition(commit.getMessage());
+        if (partition >= 0) {
+            if (this.batch.size() == this.batchPartitions.length) {
+                this.batchPartitions = Arrays.copyOf(this.batchPartitions, this.batch.size() * 2);
+            }
+            this.batchPartitions[this.batch.size()] = partition;
+            this.batch.add(commit);
+            return;
+        }
+
+        // colors in several partitions: move everything to a single queue
+        runBatch();
+        ConfQueue queue = new ConfQueue(this.batching, this.optDelivery);
+        queue.init(this.delivered);
+        for (ConfQueue q : this.queues) {
+            q.forEachPending(queue::add);
+            // drop the moved vertices, and their colors
+            q.init(this.delivered);
+        }
+        queue.add(commit);
+        this.single = queue;
+    }
+
+    @Override
+    public List<ConfQueueBox> drainDeliverable() {
+        if (this.single != null) {
+            delivered(this.single.drainDeliverable());
+            if (this.single.isEmpty() && this.optDelivery) {
+                // partition again
+                this.singleAdds += this.single.adds();
+                this.singleHits += this.single.fastPathHits();
+                this.single = null;
+                for (ConfQueue queue : this.queues) {
+                    queue.init(this.delivered);
+                }
+            }
+        } else {
+            runBatch();
+        }
+
+        publish();
+
+        List<ConfQueueBox> result = this.ready;
+        this.ready = new ArrayList<>();
+        return result;
+    }
+
+    @Override
+    public int elements() {
+        if (this.single != null) {
+            return this.single.elements();
+        }
+        int elements = this.batch.size();
+        for (ConfQueue queue : this.queues) {
+            elements += queue.elements();
+        }
+        return elements;
+    }
+
+    /**
+     * As of the last drain.
+     */
+    @Override
+    public int colors() {
+        return this.colors;
+    }
+
+    /**
+     * As of the last drain.
+     */
+    @Override
+    public long colorFootprint() {
+        return this.colorFootprint;
+    }
+
+    /**
+     * As of the last drain.
+     */
+    @Override
+    public double fastPathRate() {
+        return this.fastPathRate;
+    }
+
+    @Override
+    public void close() {
+        this.pool.shutdownNow();
+    }
+
+    /**
+     * Owner thread only. Computes the gauges and publishes them.
+     */
+    private void publish() {
+        // all the queues are counted, in both modes
+        // - in single mode, the partitions are empty
+        int colors = 0;
+        long footprint = 0;
+        long adds = this.singleAdds;
+        long hits = this.singleHits;
+        if (this.single != null) {
+            colors += this.single.colors();
+            footprint += this.single.colorFootprint();
+            adds += this.single.adds();
+            hits += this.single.fastPathHits();
+        }
+        for (ConfQueue queue : this.queues) {
+            colors += queue.colors();
+            footprint += queue.colorFootprint();
+            adds += queue.adds();
+            hits += queue.fastPathHits();
+        }
+        this.colors = colors;
+        this.colorFootprint = footprint;
+        this.fastPathRate = adds == 0 ? 0 : (double) hits / adds;
+    }
+
+    /**
+     * Partition of the colors of the message, or -1 if they're in several.
+     * Messages without colors go to the first partition.
+     */
+    int partition(Message message) {
+        int partition = -1;
+        for (ByteString color : message.getHashesList()) {
+            int p = (color.hashCode() & Integer.MAX_VALUE) % this.partitions;
+            if (partition == -1) {
+                partition = p;
+            } else if (partition != p) {
+                return -1;
+            }
+        }
+        return partition == -1 ? 0 : partition;
+    }
+
+    /**
+     * Adds the batch to the partitions, and saves the boxes found.
+     */
+    private void runBatch() {
+        if (this.batch.isEmpty()) {
+            return;
+        }
+
+        // the commits of each partition, and the dots of all
+        List<List<Commit>> owned = new ArrayList<>(this.partitions);
+        for (int p = 0; p < this.partitions; p++) {
+            owned.add(new ArrayList<>());
+        }
+        Clock<ExceptionSet> dots = Clock.eclock(this.delivered.size());
+        for (int i = 0; i < this.batch.size(); i++) {
+            Commit commit = this.batch.get(i);
+            owned.get(this.batchPartitions[i]).add(commit);
+            dots.addDot(commit.getDot());
+        }
+
+        List<List<ConfQueueBox>> results = new ArrayList<>();
+        if (this.batch.size() < PARALLEL_THRESHOLD) {
+            try {
+                for (int p = 0; p < this.partitions; p++) {
+                    results.add(addBatch(this.queues[p], dots, owned.get(p)));
+                }
+            } catch (InvalidProtocolBufferException e) {
+                throw new IllegalStateException(e);
+            }
+        } else {
+            List<Future<List<ConfQueueBox>>> futures = new ArrayList<>();
+            for (int p = 0; p < this.partitions; p++) {
+                ConfQueue queue = this.queues[p];
+                List<Commit> commits = owned.get(p);
+                futures.add(this.pool.submit(() -> addBatch(queue, dots, commits)));
+            }
+            // wait for all partitions, even if interrupted:
+            // the batch can't be partially added
+            boolean interrupted = false;
+            for (Future<List<ConfQueueBox>> future : futures) {
+                while (true) {
+                    try {
+                        results.add(future.get());
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException(e.getCause());
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.batch.clear();
+
+        for (List<ConfQueueBox> result : results) {
+            delivered(result);
+        }
+    }
+
+    private List<ConfQueueBox> addBatch(ConfQueue queue, Clock<ExceptionSet> dots, List<Commit> commits) throws InvalidProtocolBufferException {
+        // skip the others first: they never conflict with the ones added
+        // - if there are any
+        if (commits.size() < this.batch.size()) {
+            queue.skipAll(dots, commits);
+        }
+        return queue.addAll(commits);
+    }
+
+    private void delivered(List<ConfQueueBox> boxes) {
+        for (ConfQueueBox box : boxes) {
+            for (Dot dot : box.getDots()) {
+                this.delivered.addDot(dot);
+            }
+        }
+        this.ready.addAll(boxes);
+    }
+}
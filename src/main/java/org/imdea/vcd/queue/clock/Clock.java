@@ -1,45 +1,56 @@
 package org.imdea.vcd.queue.clock;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.BiFunction;
+import java.util.PrimitiveIterator;
 import org.imdea.vcd.pb.Proto;
 
 /**
+ * Entries are kept in an array indexed by node id, so node ids must go
+ * from 0 to the number of nodes minus one.
  *
  * @author Vitor Enes
  * @param <T>
  */
 public class Clock<T extends IntSet> {
 
-    private final HashMap<Integer, T> map;
+    // indexed by node id
+    private final Object[] entries;
 
     public Clock(HashMap<Integer, T> map) {
-        this.map = map;
+        int size = 0;
+        for (Integer id : map.keySet()) {
+            size = Math.max(size, id + 1);
+        }
+        this.entries = new Object[size];
+        for (Map.Entry<Integer, T> entry : map.entrySet()) {
+            this.entries[entry.getKey()] = entry.getValue();
+        }
     }
 
     public Clock(Clock<T> clock) {
-        this.map = new HashMap<>();
-        for (Map.Entry<Integer, T> entry : clock.map.entrySet()) {
-            this.map.put(entry.getKey(), (T) entry.getValue().clone());
+        this.entries = new Object[clock.entries.length];
+        for (int id = 0; id < this.entries.length; id++) {
+            this.entries[id] = clock.get(id).clone();
         }
     }
 
     public Clock(Integer nodeNumber, T bottom) {
-        this.map = new HashMap<>();
-        for (Integer actor = 0; actor < nodeNumber; actor++) {
-            this.map.put(actor, (T) bottom.clone());
+        this.entries = new Object[nodeNumber];
+        for (int actor = 0; actor < nodeNumber; actor++) {
+            this.entries[actor] = bottom.clone();
         }
     }
 
-    public T get(Integer id) {
-        return this.map.get(id);
+    public T get(int id) {
+        return (T) this.entries[id];
     }
 
     public boolean isBottom() {
-        for (T t : this.map.values()) {
-            if (!t.isBottom()) {
+        for (int id = 0; id < this.entries.length; id++) {
+            if (!get(id).isBottom()) {
                 return false;
             }
         }
@@ -49,30 +60,30 @@ public class Clock<T extends IntSet> {
 
     public Dots frontier() {
         Dots dots = new Dots();
-        for (Map.Entry<Integer, T> entry : this.map.entrySet()) {
-            Dot dot = new Dot(entry.getKey(), entry.getValue().current());
-            dots.add(dot);
+        for (int id = 0; id < this.entries.length; id++) {
+            dots.add(Dot.pack(id, get(id).current()));
         }
         return dots;
     }
 
     public boolean contains(Dot dot) {
-        return this.map.get(dot.getId()).contains(dot.getSeq());
+        return get(dot.getId()).contains(dot.getSeq());
+    }
+
+    public boolean contains(long packed) {
+        return get(Dot.id(packed)).contains(Dot.seq(packed));
     }
 
     public void merge(Clock<T> clock) {
-        BiFunction<T, T, T> f = (a, b) -> {
-            a.merge(b);
-            return a;
-        };
-        for (Map.Entry<Integer, T> entry : clock.map.entrySet()) {
-            this.map.merge(entry.getKey(), entry.getValue(), f);
+        for (int id = 0; id < this.entries.length; id++) {
+            get(id).merge(clock.get(id));
         }
     }
 
     public boolean intersects(Dots dots) {
-        for (Dot dot : dots) {
-            if (this.contains(dot)) {
+        PrimitiveIterator.OfLong it = dots.packedIterator();
+        while (it.hasNext()) {
+            if (this.contains(it.nextLong())) {
                 return true;
             }
         }
@@ -82,19 +93,15 @@ public class Clock<T extends IntSet> {
     public Dots subtract(Clock<T> clockB) {
         Dots dots = new Dots();
 
-        for (Map.Entry<Integer, T> entry : this.map.entrySet()) {
-            // get actor
-            Integer actor = entry.getKey();
-
+        for (int actor = 0; actor < this.entries.length; actor++) {
             // subtract b from a
-            T a = entry.getValue();
-            T b = clockB.map.get(actor);
+            T a = get(actor);
+            T b = clockB.get(actor);
             List<Long> seqs = a.subtract(b);
 
             // create dots from subtract result
             for (Long seq : seqs) {
-                Dot dot = new Dot(actor, seq);
-                dots.add(dot);
+                dots.add(Dot.pack(actor, seq));
             }
         }
 
@@ -104,13 +111,10 @@ public class Clock<T extends IntSet> {
     public static Map<Integer, List<Long>> subtract(Clock<MaxInt> clockA, Clock<ExceptionSet> clockB) {
         Map<Integer, List<Long>> result = new HashMap<>();
 
-        for (Map.Entry<Integer, MaxInt> entry : clockA.map.entrySet()) {
-            // get actor
-            Integer actor = entry.getKey();
-
+        for (int actor = 0; actor < clockA.entries.length; actor++) {
             // subtract b from a
-            MaxInt a = entry.getValue();
-            ExceptionSet b = clockB.map.get(actor);
+            MaxInt a = clockA.get(actor);
+            ExceptionSet b = clockB.get(actor);
             List<Long> seqs = a.subtract(b);
 
             result.put(actor, seqs);
@@ -120,13 +124,10 @@ public class Clock<T extends IntSet> {
     }
 
     public boolean subtractIsBottom(Clock<T> clock) {
-        for (Map.Entry<Integer, T> entry : this.map.entrySet()) {
-            // get actor
-            Integer actor = entry.getKey();
-
+        for (int actor = 0; actor < this.entries.length; actor++) {
             // subtract b from a
-            T a = entry.getValue();
-            T b = clock.map.get(actor);
+            T a = get(actor);
+            T b = clock.get(actor);
 
             if (!a.subtractIsBottom(b)) {
                 return false;
@@ -137,29 +138,33 @@ public class Clock<T extends IntSet> {
     }
 
     public void addDot(Dot dot) {
-        this.map.get(dot.getId()).add(dot.getSeq());
+        get(dot.getId()).add(dot.getSeq());
+    }
+
+    public void addDot(long packed) {
+        get(Dot.id(packed)).add(Dot.seq(packed));
     }
 
     public void removeDot(Dot dot) {
-        this.map.get(dot.getId()).remove(dot.getSeq());
+        get(dot.getId()).remove(dot.getSeq());
     }
 
     public void addDots(Dots dots) {
-        for (Dot dot : dots) {
-            addDot(dot);
+        PrimitiveIterator.OfLong it = dots.packedIterator();
+        while (it.hasNext()) {
+            addDot(it.nextLong());
         }
     }
 
     public int size() {
-        return this.map.size();
+        return this.entries.length;
     }
 
     public Dots nextDots() {
         Dots dots = new Dots();
 
-        for (Map.Entry<Integer, T> entry : this.map.entrySet()) {
-            Dot dot = new Dot(entry.getKey(), entry.getValue().next());
-            dots.add(dot);
+        for (int id = 0; id < this.entries.length; id++) {
+            dots.add(Dot.pack(id, get(id).next()));
         }
 
         return dots;
@@ -180,14 +185,14 @@ public class Clock<T extends IntSet> {
             return false;
         }
         Clock<T> t = (Clock<T>) o;
-        return this.map.equals(t.map);
+        return Arrays.equals(this.entries, t.entries);
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("[");
-        for (T t : this.map.values()) {
+        for (Object t : this.entries) {
             sb.append(t).append(",");
         }
         sb.deleteCharAt(sb.length() - 1);
@@ -239,8 +244,17 @@ public class Clock<T extends IntSet> {
 
     public static Clock<ExceptionSet> eclock(Clock<MaxInt> conf) {
         HashMap<Integer, ExceptionSet> map = new HashMap<>();
-        for (Map.Entry<Integer, MaxInt> entry : conf.map.entrySet()) {
-            map.put(entry.getKey(), entry.getValue().toExceptionSet());
+        for (int id = 0; id < conf.entries.length; id++) {
+            map.put(id, conf.get(id).toExceptionSet());
+        }
+        Clock<ExceptionSet> clock = new Clock<>(map);
+        return clock;
+    }
+
+    public static Clock<ExceptionSet> eclock(VClock conf) {
+        HashMap<Integer, ExceptionSet> map = new HashMap<>();
+        for (int id = 0; id < conf.size(); id++) {
+            map.put(id, new ExceptionSet(conf.get(id)));
         }
         Clock<ExceptionSet> clock = new Clock<>(map);
         return clock;
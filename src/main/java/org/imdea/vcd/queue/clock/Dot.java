@@ -1,18 +1,23 @@
 package org.imdea.vcd.queue.clock;
 
-import java.util.Objects;
 import org.imdea.vcd.pb.Proto;
 
 /**
+ * A dot can also be packed in a single long, with the id in the 16 high
+ * bits and the seq in the 48 low bits: the queue indexes its vertices by
+ * packed dot, so that lookups don't allocate.
  *
  * @author Vitor Enes
  */
 public class Dot implements Comparable<Dot> {
 
-    private final Integer id;
-    private final Long seq;
+    private static final int SEQ_BITS = 48;
+    private static final long SEQ_MASK = (1L << SEQ_BITS) - 1;
 
-    public Dot(Integer id, Long seq) {
+    private final int id;
+    private final long seq;
+
+    public Dot(int id, long seq) {
         this.id = id;
         this.seq = seq;
     }
@@ -22,14 +27,30 @@ public class Dot implements Comparable<Dot> {
         this.seq = dot.seq;
     }
 
-    public Integer getId() {
+    public int getId() {
         return id;
     }
 
-    public Long getSeq() {
+    public long getSeq() {
         return seq;
     }
 
+    public long packed() {
+        return pack(this.id, this.seq);
+    }
+
+    public static long pack(int id, long seq) {
+        return ((long) id << SEQ_BITS) | seq;
+    }
+
+    public static int id(long packed) {
+        return (int) (packed >>> SEQ_BITS);
+    }
+
+    public static long seq(long packed) {
+        return packed & SEQ_MASK;
+    }
+
     @Override
     public String toString() {
         return "<" + id + "," + seq + ">";
@@ -40,6 +61,11 @@ public class Dot implements Comparable<Dot> {
         return newDot;
     }
 
+    public static Dot dot(long packed) {
+        Dot newDot = new Dot(id(packed), seq(packed));
+        return newDot;
+    }
+
     @Override
     public Object clone() {
         Dot dot = new Dot(this);
@@ -61,22 +87,22 @@ public class Dot implements Comparable<Dot> {
             return false;
         }
         Dot t = (Dot) o;
-        return Objects.equals(this.id, t.id) && Objects.equals(this.seq, t.seq);
+        return this.id == t.id && this.seq == t.seq;
     }
 
     @Override
     public int hashCode() {
         int hash = 5;
-        hash = 89 * hash + Objects.hashCode(this.id);
-        hash = 89 * hash + Objects.hashCode(this.seq);
+        hash = 89 * hash + Integer.hashCode(this.id);
+        hash = 89 * hash + Long.hashCode(this.seq);
         return hash;
     }
 
     @Override
     public int compareTo(Dot o) {
-        if (Objects.equals(this.id, o.id)) {
-            return this.seq.compareTo(o.seq);
+        if (this.id == o.id) {
+            return Long.compare(this.seq, o.seq);
         }
-        return this.id.compareTo(o.id);
+        return Integer.compare(this.id, o.id);
     }
 }
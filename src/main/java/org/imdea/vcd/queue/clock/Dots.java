@@ -1,41 +1,47 @@
 package org.imdea.vcd.queue.clock;
 
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
-import java.util.Objects;
-import java.util.Set;
-import java.util.function.Predicate;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import org.imdea.vcd.util.LongHashSet;
 
 /**
+ * Set of dots, stored packed.
  *
  * @author Vitor Enes
  */
 public class Dots implements Iterable<Dot> {
 
-    private final HashSet<Dot> set;
+    private final LongHashSet set;
 
     public Dots() {
-        this.set = new HashSet<>();
+        this.set = new LongHashSet();
     }
 
     public Dots(Dot dot) {
-        this.set = new HashSet<>(Arrays.asList(dot));
+        this.set = new LongHashSet();
+        this.set.add(dot.packed());
     }
 
-    public Dots(Set<Dot> dots) {
-        this.set = new HashSet<>(dots);
+    public Dots(Collection<Dot> dots) {
+        this.set = new LongHashSet(dots.size());
+        for (Dot dot : dots) {
+            this.set.add(dot.packed());
+        }
     }
 
     public Dots(Dots dots) {
-        this.set = new HashSet<>();
-        for (Dot dot : dots.set) {
-            this.set.add((Dot) dot.clone());
-        }
+        this.set = new LongHashSet(dots.set);
     }
 
     public void add(Dot dot) {
-        this.set.add(dot);
+        this.set.add(dot.packed());
+    }
+
+    public void add(long packed) {
+        this.set.add(packed);
     }
 
     public void addAll(Dots dots) {
@@ -43,7 +49,7 @@ public class Dots implements Iterable<Dot> {
     }
 
     public void remove(Dot dot) {
-        this.set.remove(dot);
+        this.set.remove(dot.packed());
     }
 
     public void merge(Dots dots) {
@@ -51,11 +57,11 @@ public class Dots implements Iterable<Dot> {
     }
 
     public boolean contains(Dot dot) {
-        return this.set.contains(dot);
+        return this.set.contains(dot.packed());
     }
 
-    public boolean removeIf(Predicate<Dot> filter) {
-        return this.set.removeIf(filter);
+    public boolean contains(long packed) {
+        return this.set.contains(packed);
     }
 
     public boolean isEmpty() {
@@ -66,14 +72,36 @@ public class Dots implements Iterable<Dot> {
         return this.set.size();
     }
 
+    /**
+     * Iterates the packed dots, without allocating a Dot per element.
+     */
+    public PrimitiveIterator.OfLong packedIterator() {
+        return this.set.iterator();
+    }
+
     @Override
     public Iterator<Dot> iterator() {
-        return this.set.iterator();
+        PrimitiveIterator.OfLong it = this.set.iterator();
+        return new Iterator<Dot>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Dot next() {
+                return Dot.dot(it.nextLong());
+            }
+        };
     }
 
     @Override
     public String toString() {
-        return this.set.toString();
+        List<Dot> dots = new ArrayList<>();
+        for (Dot dot : this) {
+            dots.add(dot);
+        }
+        return dots.toString();
     }
 
     @Override
@@ -97,13 +125,13 @@ public class Dots implements Iterable<Dot> {
             return false;
         }
         Dots t = (Dots) o;
-        return Objects.equals(this.set, t.set);
+        return this.set.equals(t.set);
     }
 
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 59 * hash + Objects.hashCode(this.set);
+        hash = 59 * hash + this.set.hashCode();
         return hash;
     }
 }
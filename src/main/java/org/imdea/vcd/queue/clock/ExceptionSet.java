@@ -3,51 +3,61 @@ package org.imdea.vcd.queue.clock;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
 import org.imdea.vcd.pb.Proto;
 
 /**
+ * Exceptions are kept as sorted ranges, so that a big jump in seq adds a
+ * single range instead of one exception per missing seq. All operations
+ * are linear (or logarithmic) in the number of ranges.
  *
  * @author Vitor Enes
  */
 public class ExceptionSet implements IntSet<ExceptionSet> {
 
     private static final ExceptionSet BOTTOM = new ExceptionSet();
+    private static final long[] NO_RANGES = new long[0];
 
-    private Long seq;
-    private HashSet<Long> exceptions;
-    // thread safe version:
-    // private ConcurrentHashMap.KeySetView<Long, Boolean> exceptions;
+    private long seq;
+    // ranges[i] to ranges[i + 1], both inclusive, for even i < size
+    // - ranges are disjoint, sorted and never adjacent
+    private long[] ranges;
+    private int size;
 
     public ExceptionSet() {
         this.seq = 0L;
-        this.exceptions = new HashSet<>();
-        // this.exceptions = ConcurrentHashMap.newKeySet();
+        this.ranges = NO_RANGES;
+        this.size = 0;
     }
 
-    public ExceptionSet(Long seq, HashSet<Long> exceptions) {
+    public ExceptionSet(long seq, Collection<Long> exceptions) {
         this.seq = seq;
-        this.exceptions = new HashSet(exceptions);
-        // this.exceptions = newKeySet(exceptions);
+        this.ranges = NO_RANGES;
+        this.size = 0;
+
+        long[] sorted = new long[exceptions.size()];
+        int i = 0;
+        for (Long ex : exceptions) {
+            sorted[i++] = ex;
+        }
+        Arrays.sort(sorted);
+        for (long ex : sorted) {
+            appendRange(ex, ex);
+        }
     }
 
-    public ExceptionSet(Long seq, Long... exceptions) {
-        this.seq = seq;
-        this.exceptions = new HashSet(Arrays.asList(exceptions));
-        // this.exceptions = newKeySet(Arrays.asList(exceptions));
+    public ExceptionSet(long seq, Long... exceptions) {
+        this(seq, Arrays.asList(exceptions));
     }
 
     public ExceptionSet(Proto.ExceptionSet ex) {
-        this(ex.getSeq(), new HashSet<>(ex.getExList()));
+        this(ex.getSeq(), ex.getExList());
     }
 
     public ExceptionSet(ExceptionSet exceptionSet) {
         this.seq = exceptionSet.seq;
-        this.exceptions = new HashSet(exceptionSet.exceptions);
+        this.ranges = Arrays.copyOf(exceptionSet.ranges, exceptionSet.size);
+        this.size = exceptionSet.size;
     }
 
     public MaxInt toMaxInt() {
@@ -61,75 +71,97 @@ public class ExceptionSet implements IntSet<ExceptionSet> {
     }
 
     @Override
-    public boolean contains(Long seq) {
-        return seq <= this.seq && !this.exceptions.contains(seq);
+    public boolean contains(long seq) {
+        return seq <= this.seq && rangeOf(seq) < 0;
     }
 
     @Override
-    public boolean containsAll(Long seq) {
+    public boolean containsAll(long seq) {
         // if contains seq, and all smaller than seq
-        if (seq <= this.seq) {
-            // if any exception is <= seq, then false
-            for (Long ex : this.exceptions) {
-                if (ex <= seq) {
-                    return false;
-                }
-            }
-            return true;
-        } else {
-            return false;
-        }
+        // - the first exception is the smallest
+        return seq <= this.seq && (this.size == 0 || this.ranges[0] > seq);
     }
 
     @Override
-    public void add(Long seq) {
-        Long current = this.seq;
+    public void add(long seq) {
+        long current = this.seq;
         if (seq >= current + 1) {
             // add all possible exceptions
-            for (Long e = current + 1; e <= seq - 1; e++) {
-                this.exceptions.add(e);
+            if (seq - 1 >= current + 1) {
+                appendRange(current + 1, seq - 1);
             }
 
             // update seq
             this.seq = seq;
         } else {
             // remove from exceptions
-            this.exceptions.remove(seq);
+            int i = rangeOf(seq);
+            if (i >= 0) {
+                removeFromRange(i, seq);
+            }
         }
     }
 
     @Override
-    public void remove(Long seq) {
-        throw new UnsupportedOperationException("Not supported yet.");
-    }
-
-    @Override
-    public void merge(ExceptionSet o) {
-        ExceptionSet merged = merge(this, o);
-        this.seq = merged.seq;
-        this.exceptions = merged.exceptions;
-    }
-
-    private ExceptionSet merge(ExceptionSet a, ExceptionSet b) {
-        Long newSeq = Long.max(a.seq, b.seq);
-
-        HashSet<Long> newExceptions = new HashSet<>();
-        // collect exceptions from a
-        for (Long s : a.exceptions) {
-            if (s > b.seq || b.exceptions.contains(s)) {
-                newExceptions.add(s);
+    public void remove(long seq) {
+        if (seq < 1 || seq > this.seq) {
+            return;
+        }
+        if (seq == this.seq) {
+            // the highest: move down, over the exceptions just below
+            this.seq = seq - 1;
+            if (this.size > 0 && this.ranges[this.size - 1] == this.seq) {
+                this.seq = this.ranges[this.size - 2] - 1;
+                this.size -= 2;
             }
+            return;
         }
 
-        // collect exceptions from b
-        for (Long s : b.exceptions) {
-            if (s > a.seq || a.exceptions.contains(s)) {
-                newExceptions.add(s);
+        // first range after seq
+        int lo = 0;
+        int hi = this.size / 2;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.ranges[mid * 2 + 1] < seq) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
             }
         }
+        int i = lo * 2;
+        if (i < this.size && this.ranges[i] <= seq) {
+            // already an exception
+            return;
+        }
+
+        boolean withPrevious = i > 0 && this.ranges[i - 1] == seq - 1;
+        boolean withNext = i < this.size && this.ranges[i] == seq + 1;
+        if (withPrevious && withNext) {
+            this.ranges[i - 1] = this.ranges[i + 1];
+            System.arraycopy(this.ranges, i + 2, this.ranges, i, this.size - i - 2);
+            this.size -= 2;
+        } else if (withPrevious) {
+            this.ranges[i - 1] = seq;
+        } else if (withNext) {
+            this.ranges[i] = seq;
+        } else {
+            ensureCapacity(this.size + 2);
+            System.arraycopy(this.ranges, i, this.ranges, i + 2, this.size - i);
+            this.ranges[i] = seq;
+            this.ranges[i + 1] = seq;
+            this.size += 2;
+        }
+    }
 
-        ExceptionSet c = new ExceptionSet(newSeq, newExceptions);
-        return c;
+    @Override
+    public void merge(ExceptionSet o) {
+        // a seq is an exception in the merge iff
+        // it's missing from both
+        long newSeq = Long.max(this.seq, o.seq);
+        long[] merged = intersect(this.missing(newSeq), o.missing(newSeq));
+        this.seq = newSeq;
+        this.ranges = merged;
+        this.size = merged.length;
     }
 
     @Override
@@ -137,17 +169,12 @@ public class ExceptionSet implements IntSet<ExceptionSet> {
         List<Long> result = new ArrayList<>();
 
         // returns
-        // [b.seq + 1 .. this.seq] \minus this.exceptions
-        for (Long i = b.seq + 1; i <= this.seq; i++) {
-            if (!this.exceptions.contains(i)) {
-                result.add(i);
-            }
-        }
-        // ++
-        // [e =< this.seq || e \in b.exceptions] \minus this.exceptions
-        for (Long i : b.exceptions) {
-            if (i <= this.seq && !this.exceptions.contains(i)) {
-                result.add(i);
+        // ([b.seq + 1 .. this.seq] ++ b.exceptions =< this.seq)
+        // \minus this.exceptions
+        long[] diff = difference(b.missing(this.seq), this.ranges, this.size);
+        for (int i = 0; i < diff.length; i += 2) {
+            for (long s = diff[i]; s <= diff[i + 1]; s++) {
+                result.add(s);
             }
         }
 
@@ -156,28 +183,215 @@ public class ExceptionSet implements IntSet<ExceptionSet> {
 
     @Override
     public boolean subtractIsBottom(ExceptionSet b) {
-        List<Long> seqs = this.subtract(b);
-        return seqs.isEmpty();
+        long[] diff = difference(b.missing(this.seq), this.ranges, this.size);
+        return diff.length == 0;
     }
 
     @Override
-    public Long next() {
-        if (this.exceptions.isEmpty()) {
+    public long next() {
+        if (this.size == 0) {
             return this.seq + 1;
         } else {
-            return Collections.min(this.exceptions);
+            return this.ranges[0];
         }
     }
 
     @Override
-    public Long current() {
+    public long current() {
         return this.seq;
     }
 
-    public HashSet<Long> getExceptions() {
+    /**
+     * All exceptions, in increasing order.
+     */
+    public List<Long> getExceptions() {
+        List<Long> exceptions = new ArrayList<>();
+        for (int i = 0; i < this.size; i += 2) {
+            for (long s = this.ranges[i]; s <= this.ranges[i + 1]; s++) {
+                exceptions.add(s);
+            }
+        }
         return exceptions;
     }
 
+    /**
+     * Highest seq in the set not greater than seq, or 0 if none.
+     */
+    public long previous(long seq) {
+        if (seq > this.seq) {
+            seq = this.seq;
+        }
+        // ranges are coalesced, so the seq before a range is not an exception
+        int i = rangeOf(seq);
+        return i < 0 ? seq : this.ranges[i] - 1;
+    }
+
+    /**
+     * Highest seq not in the set and not greater than seq, or 0 if none.
+     */
+    public long previousMissing(long seq) {
+        if (seq > this.seq) {
+            return seq;
+        }
+        // last range starting at or before seq
+        int found = -1;
+        int lo = 0;
+        int hi = this.size / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.ranges[mid * 2] <= seq) {
+                found = mid * 2;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found < 0 ? 0 : Long.min(this.ranges[found + 1], seq);
+    }
+
+    public int rangeCount() {
+        return this.size / 2;
+    }
+
+    boolean isException(long seq) {
+        return rangeOf(seq) >= 0;
+    }
+
+    /**
+     * Index of the range with seq, or -1 if none.
+     */
+    private int rangeOf(long seq) {
+        int lo = 0;
+        int hi = this.size / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int i = mid * 2;
+            if (this.ranges[i + 1] < seq) {
+                lo = mid + 1;
+            } else if (this.ranges[i] > seq) {
+                hi = mid - 1;
+            } else {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Append a range after all the others, coalescing with the last one if
+     * adjacent.
+     */
+    private void appendRange(long from, long to) {
+        if (this.size > 0 && this.ranges[this.size - 1] >= from - 1) {
+            this.ranges[this.size - 1] = Long.max(this.ranges[this.size - 1], to);
+            return;
+        }
+        ensureCapacity(this.size + 2);
+        this.ranges[this.size++] = from;
+        this.ranges[this.size++] = to;
+    }
+
+    private void removeFromRange(int i, long seq) {
+        long from = this.ranges[i];
+        long to = this.ranges[i + 1];
+        if (from == to) {
+            // remove range
+            System.arraycopy(this.ranges, i + 2, this.ranges, i, this.size - i - 2);
+            this.size -= 2;
+        } else if (seq == from) {
+            this.ranges[i] = seq + 1;
+        } else if (seq == to) {
+            this.ranges[i + 1] = seq - 1;
+        } else {
+            // split range
+            ensureCapacity(this.size + 2);
+            System.arraycopy(this.ranges, i + 2, this.ranges, i + 4, this.size - i - 2);
+            this.ranges[i + 1] = seq - 1;
+            this.ranges[i + 2] = seq + 1;
+            this.ranges[i + 3] = to;
+            this.size += 2;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.ranges.length) {
+            this.ranges = Arrays.copyOf(this.ranges, Math.max(4, Math.max(capacity, this.ranges.length * 2)));
+        }
+    }
+
+    /**
+     * Ranges of seqs up to upTo that are not in this set.
+     */
+    private long[] missing(long upTo) {
+        long[] result = new long[this.size + 2];
+        int n = 0;
+        for (int i = 0; i < this.size && this.ranges[i] <= upTo; i += 2) {
+            result[n++] = this.ranges[i];
+            result[n++] = Long.min(this.ranges[i + 1], upTo);
+        }
+        if (this.seq < upTo) {
+            if (n > 0 && result[n - 1] >= this.seq) {
+                result[n - 1] = upTo;
+            } else {
+                result[n++] = this.seq + 1;
+                result[n++] = upTo;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[a.length + b.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            long from = Long.max(a[i], b[j]);
+            long to = Long.min(a[i + 1], b[j + 1]);
+            if (from <= to) {
+                result[n++] = from;
+                result[n++] = to;
+            }
+            // move the range that ends first
+            if (a[i + 1] < b[j + 1]) {
+                i += 2;
+            } else {
+                j += 2;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static long[] difference(long[] a, long[] b, int bSize) {
+        long[] result = new long[a.length + bSize];
+        int n = 0;
+        int j = 0;
+        for (int i = 0; i < a.length; i += 2) {
+            long from = a[i];
+            long to = a[i + 1];
+            // skip ranges of b before this one
+            while (j < bSize && b[j + 1] < from) {
+                j += 2;
+            }
+            // and cut the ones that overlap
+            int k = j;
+            while (from <= to) {
+                if (k >= bSize || b[k] > to) {
+                    result[n++] = from;
+                    result[n++] = to;
+                    break;
+                }
+                if (b[k] > from) {
+                    result[n++] = from;
+                    result[n++] = b[k] - 1;
+                }
+                from = b[k + 1] + 1;
+                k += 2;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
     @Override
     public boolean equals(Object o) {
         // self check
@@ -193,15 +407,34 @@ public class ExceptionSet implements IntSet<ExceptionSet> {
             return false;
         }
         ExceptionSet t = (ExceptionSet) o;
-        return Objects.equals(this.seq, t.seq) && this.exceptions.equals(t.exceptions);
+        if (this.seq != t.seq || this.size != t.size) {
+            return false;
+        }
+        // ranges are coalesced, so equal sets have equal ranges
+        for (int i = 0; i < this.size; i++) {
+            if (this.ranges[i] != t.ranges[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append(this.seq);
-        if (!this.exceptions.isEmpty()) {
-            sb.append(" ").append(this.exceptions);
+        if (this.size > 0) {
+            sb.append(" [");
+            for (int i = 0; i < this.size; i += 2) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(this.ranges[i]);
+                if (this.ranges[i + 1] != this.ranges[i]) {
+                    sb.append("..").append(this.ranges[i + 1]);
+                }
+            }
+            sb.append("]");
         }
         return sb.toString();
     }
@@ -211,20 +444,4 @@ public class ExceptionSet implements IntSet<ExceptionSet> {
         ExceptionSet exceptionSet = new ExceptionSet(this);
         return exceptionSet;
     }
-
-    private ConcurrentHashMap.KeySetView<Long, Boolean> newKeySet(Collection<Long> exceptions) {
-        ConcurrentHashMap.KeySetView<Long, Boolean> result = ConcurrentHashMap.newKeySet();
-        for (Long ex : exceptions) {
-            result.add(ex);
-        }
-        return result;
-    }
-
-    private ConcurrentHashMap.KeySetView<Long, Boolean> newKeySet(ConcurrentHashMap.KeySetView<Long, Boolean> exceptions) {
-        ConcurrentHashMap.KeySetView<Long, Boolean> result = ConcurrentHashMap.newKeySet();
-        for (Long ex : exceptions) {
-            result.add(ex);
-        }
-        return result;
-    }
 }
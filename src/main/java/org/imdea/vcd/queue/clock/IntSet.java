@@ -11,13 +11,13 @@ public interface IntSet<T> {
 
     boolean isBottom();
 
-    boolean contains(Long seq);
+    boolean contains(long seq);
 
-    boolean containsAll(Long seq);
+    boolean containsAll(long seq);
 
-    void add(Long seq);
+    void add(long seq);
 
-    void remove(Long seq);
+    void remove(long seq);
 
     void merge(T o);
 
@@ -25,9 +25,9 @@ public interface IntSet<T> {
 
     boolean subtractIsBottom(T o);
 
-    Long current();
+    long current();
 
-    Long next();
+    long next();
 
     Object clone();
 }
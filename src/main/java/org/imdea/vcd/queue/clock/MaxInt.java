@@ -2,7 +2,6 @@ package org.imdea.vcd.queue.clock;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 
 /**
  *
@@ -12,13 +11,13 @@ public class MaxInt implements IntSet<MaxInt> {
 
     private static final MaxInt BOTTOM = new MaxInt();
 
-    private Long seq;
+    private long seq;
 
     public MaxInt() {
         this.seq = 0L;
     }
 
-    public MaxInt(Long seq) {
+    public MaxInt(long seq) {
         this.seq = seq;
     }
 
@@ -37,22 +36,22 @@ public class MaxInt implements IntSet<MaxInt> {
     }
 
     @Override
-    public boolean contains(Long seq) {
+    public boolean contains(long seq) {
         return seq <= this.seq;
     }
 
     @Override
-    public boolean containsAll(Long seq) {
+    public boolean containsAll(long seq) {
         return contains(seq);
     }
 
     @Override
-    public void add(Long seq) {
+    public void add(long seq) {
         this.seq = Long.max(this.seq, seq);
     }
 
     @Override
-    public void remove(Long seq) {
+    public void remove(long seq) {
         this.seq = Long.min(this.seq, seq - 1);
     }
 
@@ -66,7 +65,7 @@ public class MaxInt implements IntSet<MaxInt> {
         List<Long> result = new ArrayList<>();
 
         // returns [b.seq + 1 .. this.seq]
-        for (Long i = b.seq + 1; i <= this.seq; i++) {
+        for (long i = b.seq + 1; i <= this.seq; i++) {
             result.add(i);
         }
 
@@ -75,7 +74,7 @@ public class MaxInt implements IntSet<MaxInt> {
 
     public List<Long> subtract(ExceptionSet b) {
         List<Long> result = this.subtract(b.toMaxInt());
-        result.removeAll(b.getExceptions());
+        result.removeIf(b::isException);
         return result;
     }
 
@@ -85,12 +84,12 @@ public class MaxInt implements IntSet<MaxInt> {
     }
 
     @Override
-    public Long next() {
+    public long next() {
         return this.seq + 1;
     }
 
     @Override
-    public Long current() {
+    public long current() {
         return this.seq;
     }
 
@@ -109,12 +108,12 @@ public class MaxInt implements IntSet<MaxInt> {
             return false;
         }
         MaxInt t = (MaxInt) o;
-        return Objects.equals(this.seq, t.seq);
+        return this.seq == t.seq;
     }
 
     @Override
     public String toString() {
-        return this.seq.toString();
+        return Long.toString(this.seq);
     }
 
     @Override
@@ -0,0 +1,174 @@
+package org.imdea.vcd.queue.clock;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Vector clock with one seq per node, kept in a long array indexed by node
+ * id. Same as a Clock&lt;MaxInt&gt;, without the boxing: used for the conf
+ * of each commit.
+ *
+ * @author Vitor Enes
+ */
+public class VClock {
+
+    private final long[] seqs;
+
+    public VClock(int nodeNumber) {
+        this.seqs = new long[nodeNumber];
+    }
+
+    public VClock(long... seqs) {
+        this.seqs = seqs;
+    }
+
+    public VClock(VClock clock) {
+        this.seqs = clock.seqs.clone();
+    }
+
+    public VClock(Clock<MaxInt> clock) {
+        this.seqs = new long[clock.size()];
+        for (int id = 0; id < this.seqs.length; id++) {
+            this.seqs[id] = clock.get(id).current();
+        }
+    }
+
+    public long get(int id) {
+        return this.seqs[id];
+    }
+
+    public void set(int id, long seq) {
+        this.seqs[id] = seq;
+    }
+
+    public int size() {
+        return this.seqs.length;
+    }
+
+    public boolean isBottom() {
+        for (long seq : this.seqs) {
+            if (seq != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean contains(Dot dot) {
+        return dot.getSeq() <= this.seqs[dot.getId()];
+    }
+
+    public boolean contains(long packed) {
+        return Dot.seq(packed) <= this.seqs[Dot.id(packed)];
+    }
+
+    public void addDot(long packed) {
+        int id = Dot.id(packed);
+        this.seqs[id] = Long.max(this.seqs[id], Dot.seq(packed));
+    }
+
+    public void merge(VClock clock) {
+        for (int id = 0; id < this.seqs.length; id++) {
+            this.seqs[id] = Long.max(this.seqs[id], clock.seqs[id]);
+        }
+    }
+
+    public Dots subtract(VClock clockB) {
+        Dots dots = new Dots();
+
+        // returns [b.seq + 1 .. a.seq] for each node
+        for (int id = 0; id < this.seqs.length; id++) {
+            for (long seq = clockB.seqs[id] + 1; seq <= this.seqs[id]; seq++) {
+                dots.add(Dot.pack(id, seq));
+            }
+        }
+
+        return dots;
+    }
+
+    public boolean subtractIsBottom(VClock clockB) {
+        for (int id = 0; id < this.seqs.length; id++) {
+            if (this.seqs[id] > clockB.seqs[id]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Dots frontier() {
+        Dots dots = new Dots();
+        for (int id = 0; id < this.seqs.length; id++) {
+            dots.add(Dot.pack(id, this.seqs[id]));
+        }
+        return dots;
+    }
+
+    public Dots nextDots() {
+        Dots dots = new Dots();
+        for (int id = 0; id < this.seqs.length; id++) {
+            dots.add(Dot.pack(id, this.seqs[id] + 1));
+        }
+        return dots;
+    }
+
+    public Clock<MaxInt> toClock() {
+        Clock<MaxInt> clock = Clock.vclock(this.seqs.length);
+        for (int id = 0; id < this.seqs.length; id++) {
+            clock.get(id).add(this.seqs[id]);
+        }
+        return clock;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        // self check
+        if (this == o) {
+            return true;
+        }
+        // null check
+        if (o == null) {
+            return false;
+        }
+        // type check and cast
+        if (getClass() != o.getClass()) {
+            return false;
+        }
+        VClock t = (VClock) o;
+        return Arrays.equals(this.seqs, t.seqs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.seqs);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (long seq : this.seqs) {
+            sb.append(seq).append(",");
+        }
+        sb.deleteCharAt(sb.length() - 1);
+        sb.append("]");
+        return sb.toString();
+    }
+
+    @Override
+    public Object clone() {
+        VClock clock = new VClock(this);
+        return clock;
+    }
+
+    public static VClock vclock(Map<Integer, Long> o) {
+        int size = 0;
+        for (Integer id : o.keySet()) {
+            size = Math.max(size, id + 1);
+        }
+        VClock clock = new VClock(size);
+        for (Map.Entry<Integer, Long> entry : o.entrySet()) {
+            clock.seqs[entry.getKey()] = entry.getValue();
+        }
+        return clock;
+    }
+}
@@ -1,6 +1,7 @@
 package org.imdea.vcd.util;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import java.util.HashSet;
 import java.util.List;
@@ -41,9 +42,16 @@ public class Batch {
         return message;
     }
 
+    /**
+     * The messages in the batch. They point to the bytes of the data of m
+     * instead of copying them, so they're only valid as long as m is: with
+     * -aliasing, m points to a receive buffer (slab), and so the messages
+     * are only valid until the slab is released.
+     */
     public static List<Message> unpack(Message m) throws InvalidProtocolBufferException {
-        List<Message> messages = MessageSet.parseFrom(m.getData()).getMessagesList();
-        return messages;
+        CodedInputStream in = m.getData().newCodedInput();
+        in.enableAliasing(true);
+        return MessageSet.parser().parseFrom(in).getMessagesList();
     }
 
     public static MessageSet unpack(Message m, MessageSet.Status status) throws InvalidProtocolBufferException {
@@ -0,0 +1,98 @@
+package org.imdea.vcd.util;
+
+/**
+ * Decides when the writer flushes a batch.
+ *
+ * A batch is flushed as soon as it reaches the maximum number of messages
+ * or bytes, or when its window expires, whatever comes first. The window
+ * starts when the first message of the batch is taken from the queue.
+ *
+ * In adaptive mode, the messages that arrived during the recent windows
+ * give the arrival rate, and the window is moved (by at most 2x at a time)
+ * to the one that would gather TARGET_SIZE messages per batch: it settles
+ * there, instead of running to one of its bounds, since a wider window
+ * gives larger batches and so a narrower target. The window is kept below
+ * the configured one, and below a fraction of the observed commit latency:
+ * if the widest allowed wouldn't gather MIN_SIZE messages, waiting is only
+ * adding latency, and the window is halved instead. It never goes below
+ * MIN_WINDOW, and a configured window at or below it is never moved.
+ *
+ * @author Vitor Enes
+ */
+public class BatchPolicy {
+
+    private static final long MIN_WINDOW = 1000L; // 1us
+    private static final double MIN_SIZE = 2.0;
+    private static final double TARGET_SIZE = 3.0;
+    private static final long COMMIT_LATENCY_FRACTION = 10;
+
+    private final int maxSize;
+    private final int maxBytes;
+    private final long maxWindow;
+    private final boolean adaptive;
+
+    private long window;
+
+    /**
+     * @param window window in nanoseconds
+     * @param maxSize maximum number of messages per batch
+     * @param maxBytes maximum number of bytes per batch
+     * @param adaptive if true, the window adapts to the load
+     */
+    public BatchPolicy(long window, int maxSize, int maxBytes, boolean adaptive) {
+        this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
+        this.maxWindow = window;
+        this.adaptive = adaptive;
+        this.window = window;
+    }
+
+    /**
+     * Current window in nanoseconds.
+     */
+    public long window() {
+        return this.window;
+    }
+
+    public boolean isAdaptive() {
+        return this.adaptive;
+    }
+
+    public boolean full(int size, int bytes) {
+        return size >= this.maxSize || bytes >= this.maxBytes;
+    }
+
+    /**
+     * Adapt the window to the mean size of the batches flushed with the
+     * current window, and to the recent commit latency (in nanoseconds,
+     * zero if unknown).
+     */
+    public void adapt(double meanBatchSize, double commitLatency) {
+        // a window at or below the minimum (e.g. 0, no batching) is
+        // never moved
+        if (!this.adaptive || this.maxWindow <= MIN_WINDOW) {
+            return;
+        }
+
+        long max = this.maxWindow;
+        if (commitLatency > 0) {
+            max = Math.min(max, (long) commitLatency / COMMIT_LATENCY_FRACTION);
+        }
+
+        // besides the first, messages arrived at about
+        // (meanBatchSize - 1) / window
+        double rate = (Math.max(meanBatchSize, 1) - 1) / this.window;
+        double target = (TARGET_SIZE - 1) / rate;
+        long next;
+        if (1 + rate * max < MIN_SIZE) {
+            // waiting is only adding latency
+            next = this.window / 2;
+        } else {
+            next = (long) Math.max(this.window / 2, Math.min(this.window * 2, target));
+        }
+        // the commit latency doesn't take the window below the minimum,
+        // and the configured one is never exceeded
+        next = Math.min(max, next);
+        this.window = Math.min(this.maxWindow, Math.max(MIN_WINDOW, next));
+    }
+}
@@ -0,0 +1,70 @@
+package org.imdea.vcd.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pool of direct byte buffers.
+ *
+ * Buffers are grouped in power-of-two size classes, starting at the minimum
+ * capacity given at construction. Each class keeps at most a bounded number
+ * of free buffers, so that a burst of large frames doesn't pin memory
+ * forever.
+ *
+ * Not thread-safe: a pool is owned by the reader thread that acquires and
+ * releases its buffers.
+ *
+ * @author Vitor Enes
+ */
+public class BufferPool {
+
+    private static final int MAX_FREE_PER_CLASS = 8;
+    private static final int CLASSES = 24;
+
+    private final int minCapacity;
+    private final List<ArrayDeque<ByteBuffer>> free;
+
+    public BufferPool(int minCapacity) {
+        this.minCapacity = Integer.highestOneBit(Math.max(minCapacity - 1, 1)) << 1;
+        this.free = new ArrayList<>(CLASSES);
+        for (int i = 0; i < CLASSES; i++) {
+            this.free.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Returns a cleared direct buffer with capacity of at least size.
+     */
+    public ByteBuffer acquire(int size) {
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer = this.free.get(sizeClass).poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(this.minCapacity << sizeClass);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        int sizeClass = sizeClass(buffer.capacity());
+        ArrayDeque<ByteBuffer> queue = this.free.get(sizeClass);
+        // buffers not created by this pool are dropped
+        boolean exact = buffer.capacity() == (this.minCapacity << sizeClass);
+        if (exact && queue.size() < MAX_FREE_PER_CLASS) {
+            queue.push(buffer);
+        }
+    }
+
+    private int sizeClass(int size) {
+        int sizeClass = 0;
+        while ((this.minCapacity << sizeClass) < size) {
+            sizeClass++;
+        }
+        if (sizeClass >= CLASSES) {
+            throw new IllegalArgumentException("Buffer size not supported: " + size);
+        }
+        return sizeClass;
+    }
+}
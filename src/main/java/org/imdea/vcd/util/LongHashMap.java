@@ -0,0 +1,196 @@
+package org.imdea.vcd.util;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Map from primitive longs, with open addressing and linear probing.
+ *
+ * Keys and values are kept in two flat arrays, so lookups neither box the
+ * key nor follow a pointer per entry. Removals shift the following entries
+ * back instead of leaving tombstones. Long.MIN_VALUE can't be used as key.
+ *
+ * @author Vitor Enes
+ * @param <V>
+ */
+public class LongHashMap<V> {
+
+    static final long EMPTY = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    public LongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongHashMap(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    public V get(long key) {
+        int i = indexOf(key);
+        return i >= 0 ? value(i) : null;
+    }
+
+    public V put(long key, V value) {
+        checkKey(key);
+        int i = slot(key);
+        while (this.keys[i] != EMPTY) {
+            if (this.keys[i] == key) {
+                V previous = value(i);
+                this.values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & this.mask;
+        }
+        this.keys[i] = key;
+        this.values[i] = value;
+        if (++this.size > maxSize(this.keys.length)) {
+            resize(this.keys.length * 2);
+        }
+        return null;
+    }
+
+    public V remove(long key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        V previous = value(i);
+        shiftBack(i);
+        this.size--;
+        return previous;
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, EMPTY);
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+
+    public void forEachKey(LongConsumer consumer) {
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != EMPTY) {
+                consumer.accept(this.keys[i]);
+            }
+        }
+    }
+
+    public void forEachValue(Consumer<V> consumer) {
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != EMPTY) {
+                consumer.accept(value(i));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int i) {
+        return (V) this.values[i];
+    }
+
+    private int indexOf(long key) {
+        int i = slot(key);
+        while (this.keys[i] != EMPTY) {
+            if (this.keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Empty slot i, moving back the following entries that would no longer
+     * be found with slot i empty.
+     */
+    private void shiftBack(int i) {
+        int hole = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & this.mask;
+            long key = this.keys[j];
+            if (key == EMPTY) {
+                break;
+            }
+            int home = slot(key);
+            // move it if its home slot is not in (hole, j]
+            if (((j - home) & this.mask) >= ((j - hole) & this.mask)) {
+                this.keys[hole] = key;
+                this.values[hole] = this.values[j];
+                hole = j;
+            }
+        }
+        this.keys[hole] = EMPTY;
+        this.values[hole] = null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY) {
+                int j = slot(key);
+                while (this.keys[j] != EMPTY) {
+                    j = (j + 1) & this.mask;
+                }
+                this.keys[j] = key;
+                this.values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        return hash(key) & this.mask;
+    }
+
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    static int capacityFor(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (maxSize(capacity) < expected) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    static int maxSize(int capacity) {
+        // load factor of 0.75
+        return capacity - (capacity >>> 2);
+    }
+
+    static void checkKey(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key not supported: " + key);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.imdea.vcd.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Set of primitive longs, laid out as the keys of a LongHashMap.
+ *
+ * @author Vitor Enes
+ */
+public class LongHashSet {
+
+    private static final long EMPTY = LongHashMap.EMPTY;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+
+    public LongHashSet() {
+        this(0);
+    }
+
+    public LongHashSet(int expected) {
+        allocate(LongHashMap.capacityFor(expected));
+    }
+
+    public LongHashSet(LongHashSet set) {
+        this.keys = set.keys.clone();
+        this.mask = set.mask;
+        this.size = set.size;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean contains(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    public boolean add(long key) {
+        LongHashMap.checkKey(key);
+        int i = slot(key);
+        while (this.keys[i] != EMPTY) {
+            if (this.keys[i] == key) {
+                return false;
+            }
+            i = (i + 1) & this.mask;
+        }
+        this.keys[i] = key;
+        if (++this.size > LongHashMap.maxSize(this.keys.length)) {
+            resize(this.keys.length * 2);
+        }
+        return true;
+    }
+
+    public boolean remove(long key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return false;
+        }
+        // same backward shift as in LongHashMap
+        int hole = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & this.mask;
+            long k = this.keys[j];
+            if (k == EMPTY) {
+                break;
+            }
+            int home = slot(k);
+            if (((j - home) & this.mask) >= ((j - hole) & this.mask)) {
+                this.keys[hole] = k;
+                hole = j;
+            }
+        }
+        this.keys[hole] = EMPTY;
+        this.size--;
+        return true;
+    }
+
+    public void addAll(LongHashSet set) {
+        for (long key : set.keys) {
+            if (key != EMPTY) {
+                add(key);
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, EMPTY);
+        this.size = 0;
+    }
+
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int next = advance(0);
+
+            private int advance(int i) {
+                while (i < keys.length && keys[i] == EMPTY) {
+                    i++;
+                }
+                return i;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next < keys.length;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long key = keys[this.next];
+                this.next = advance(this.next + 1);
+                return key;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        // self check
+        if (this == o) {
+            return true;
+        }
+        // null check
+        if (o == null) {
+            return false;
+        }
+        // type check and cast
+        if (getClass() != o.getClass()) {
+            return false;
+        }
+        LongHashSet t = (LongHashSet) o;
+        if (this.size != t.size) {
+            return false;
+        }
+        for (long key : this.keys) {
+            if (key != EMPTY && !t.contains(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // independent of the order of the keys in the table
+        int hash = 0;
+        for (long key : this.keys) {
+            if (key != EMPTY) {
+                hash += Long.hashCode(key);
+            }
+        }
+        return hash;
+    }
+
+    private int indexOf(long key) {
+        int i = slot(key);
+        while (this.keys[i] != EMPTY) {
+            if (this.keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = this.keys;
+        allocate(capacity);
+        for (long key : oldKeys) {
+            if (key != EMPTY) {
+                int j = slot(key);
+                while (this.keys[j] != EMPTY) {
+                    j = (j + 1) & this.mask;
+                }
+                this.keys[j] = key;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        this.mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        return LongHashMap.hash(key) & this.mask;
+    }
+}
@@ -0,0 +1,230 @@
+package org.imdea.vcd.util;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Map from the seqs of a node, for seqs in a window that mostly moves
+ * forward.
+ *
+ * Values are kept in a ring indexed by seq, so a lookup is an array access
+ * and a range of seqs is a walk over the array. The ring covers the seqs
+ * from the lowest to the highest in it, and grows and shrinks with that
+ * span, up to a maximum span. A seq that would take the span over it (e.g.
+ * a low seq that stays while the others move on) is kept in a hash map of
+ * stragglers instead, below the ring. So the ring has at most twice the
+ * maximum span slots (32K by default, 256KB with 8 byte references), plus
+ * an entry per straggler. Seqs are positive.
+ *
+ * @author Vitor Enes
+ * @param <V>
+ */
+public class SeqWindow<V> {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_SPAN = 1 << 14;
+
+    private final int maxSpan;
+    private Object[] slots;
+    private int mask;
+    // all seqs in the ring are in [base, limit)
+    private long base;
+    private long limit;
+    private int ringSize;
+    // seqs below base that didn't fit in the ring (null if none)
+    private LongHashMap<V> below;
+
+    public SeqWindow() {
+        this(MAX_SPAN);
+    }
+
+    SeqWindow(int maxSpan) {
+        this.maxSpan = maxSpan;
+        allocate(MIN_CAPACITY);
+    }
+
+    public int size() {
+        return this.ringSize + (this.below == null ? 0 : this.below.size());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public V get(long seq) {
+        if (seq < this.base) {
+            return this.below == null ? null : this.below.get(seq);
+        }
+        if (seq >= this.limit) {
+            return null;
+        }
+        return slot(seq);
+    }
+
+    public V put(long seq, V value) {
+        if (size() == 0) {
+            this.base = seq;
+            this.limit = seq + 1;
+        } else if (seq < this.base) {
+            // extend the ring down, unless it's over the maximum span, or
+            // there are stragglers (that must stay below the ring)
+            if (this.ringSize == 0 || this.below != null || this.limit - seq > this.maxSpan) {
+                return putBelow(seq, value);
+            }
+            if (this.limit - seq > this.slots.length) {
+                resize(seq, this.limit);
+            }
+            this.base = seq;
+        } else if (seq >= this.limit) {
+            if (this.ringSize == 0) {
+                // every seq left is below
+                this.base = seq;
+            } else if (seq + 1 - this.base > this.maxSpan) {
+                spill(seq + 1 - this.maxSpan);
+            }
+            if (seq + 1 - this.base > this.slots.length) {
+                resize(this.base, seq + 1);
+            }
+            this.limit = seq + 1;
+        }
+
+        V previous = slot(seq);
+        this.slots[(int) seq & this.mask] = value;
+        if (previous == null) {
+            this.ringSize++;
+        }
+        return previous;
+    }
+
+    public V remove(long seq) {
+        if (seq < this.base) {
+            return removeBelow(seq);
+        }
+        if (seq >= this.limit) {
+            return null;
+        }
+        V previous = slot(seq);
+        if (previous == null) {
+            return null;
+        }
+        this.slots[(int) seq & this.mask] = null;
+        this.ringSize--;
+
+        // narrow the span to the seqs left
+        if (this.ringSize == 0) {
+            this.base = this.limit;
+        } else if (seq == this.base) {
+            while (this.slots[(int) this.base & this.mask] == null) {
+                this.base++;
+            }
+        } else if (seq == this.limit - 1) {
+            while (this.slots[(int) (this.limit - 1) & this.mask] == null) {
+                this.limit--;
+            }
+        }
+        if (this.limit - this.base < this.slots.length >>> 2 && this.slots.length > MIN_CAPACITY) {
+            resize(this.base, this.limit);
+        }
+        return previous;
+    }
+
+    public void clear() {
+        allocate(MIN_CAPACITY);
+        this.base = 0;
+        this.limit = 0;
+        this.ringSize = 0;
+        this.below = null;
+    }
+
+    /**
+     * Values in the map, by increasing seq.
+     */
+    public void forEachValue(Consumer<V> consumer) {
+        if (this.below != null) {
+            long[] seqs = new long[this.below.size()];
+            int[] i = {0};
+            this.below.forEachKey(seq -> seqs[i[0]++] = seq);
+            Arrays.sort(seqs);
+            for (long seq : seqs) {
+                consumer.accept(this.below.get(seq));
+            }
+        }
+        for (long seq = this.base; seq < this.limit; seq++) {
+            V value = slot(seq);
+            if (value != null) {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    /**
+     * Number of slots in the ring.
+     */
+    int capacity() {
+        return this.slots.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V slot(long seq) {
+        return (V) this.slots[(int) seq & this.mask];
+    }
+
+    private V putBelow(long seq, V value) {
+        if (this.below == null) {
+            this.below = new LongHashMap<>();
+        }
+        return this.below.put(seq, value);
+    }
+
+    private V removeBelow(long seq) {
+        if (this.below == null) {
+            return null;
+        }
+        V previous = this.below.remove(seq);
+        if (this.below.isEmpty()) {
+            this.below = null;
+        }
+        return previous;
+    }
+
+    /**
+     * Move the seqs of the ring below the new base to the stragglers.
+     */
+    private void spill(long base) {
+        for (long seq = this.base; seq < Long.min(base, this.limit); seq++) {
+            V value = slot(seq);
+            if (value != null) {
+                this.slots[(int) seq & this.mask] = null;
+                this.ringSize--;
+                putBelow(seq, value);
+            }
+        }
+        this.base = base;
+        if (this.ringSize == 0) {
+            this.limit = base;
+        } else {
+            while (this.slots[(int) this.base & this.mask] == null) {
+                this.base++;
+            }
+        }
+    }
+
+    private void resize(long base, long limit) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < (limit - base) * 2) {
+            capacity *= 2;
+        }
+
+        Object[] oldSlots = this.slots;
+        int oldMask = this.mask;
+        allocate(capacity);
+        for (long seq = this.base; seq < this.limit; seq++) {
+            this.slots[(int) seq & this.mask] = oldSlots[(int) seq & oldMask];
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.slots = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+}
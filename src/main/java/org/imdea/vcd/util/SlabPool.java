@@ -0,0 +1,100 @@
+package org.imdea.vcd.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of reference-counted heap buffers (slabs).
+ *
+ * A slab is acquired with one reference. Whoever keeps a view on its bytes
+ * retains it, and releases it when done: the last release returns it to
+ * the pool. Only slabs of the pool size are kept, and at most a bounded
+ * number of them.
+ *
+ * @author Vitor Enes
+ */
+public class SlabPool {
+
+    private static final int MAX_FREE = 64;
+
+    private final int slabSize;
+    private final ArrayDeque<Slab> free;
+    // slabs acquired and not yet fully released
+    private final AtomicInteger live;
+
+    public SlabPool(int slabSize) {
+        this.slabSize = slabSize;
+        this.free = new ArrayDeque<>();
+        this.live = new AtomicInteger();
+    }
+
+    /**
+     * Returns a slab with capacity of at least size and one reference.
+     */
+    public Slab acquire(int size) {
+        Slab slab = null;
+        if (size <= this.slabSize) {
+            synchronized (this) {
+                slab = this.free.poll();
+            }
+        }
+        if (slab == null) {
+            slab = new Slab(this, new byte[Math.max(size, this.slabSize)]);
+        }
+        slab.refs.set(1);
+        this.live.incrementAndGet();
+        return slab;
+    }
+
+    private void recycle(Slab slab) {
+        this.live.decrementAndGet();
+        if (slab.data.length == this.slabSize) {
+            synchronized (this) {
+                if (this.free.size() < MAX_FREE) {
+                    this.free.push(slab);
+                }
+            }
+        }
+    }
+
+    public synchronized int free() {
+        return this.free.size();
+    }
+
+    public int live() {
+        return this.live.get();
+    }
+
+    public static class Slab {
+
+        private final SlabPool pool;
+        private final byte[] data;
+        private final AtomicInteger refs = new AtomicInteger();
+
+        private Slab(SlabPool pool, byte[] data) {
+            this.pool = pool;
+            this.data = data;
+        }
+
+        public byte[] data() {
+            return this.data;
+        }
+
+        public void retain() {
+            this.refs.incrementAndGet();
+        }
+
+        public void release() {
+            int refs = this.refs.decrementAndGet();
+            if (refs == 0) {
+                this.pool.recycle(this);
+            } else if (refs < 0) {
+                throw new IllegalStateException("Slab released too many times");
+            }
+        }
+
+        public int refs() {
+            return this.refs.get();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.imdea.vcd.util;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded lock-free queue for exactly one producer and one consumer thread.
+ *
+ * Slots are pre-allocated, so no allocation happens on offer or poll. Each
+ * side caches the last index it read from the other side, and only reads
+ * the shared index again when the cached one says the queue is full (for
+ * the producer) or empty (for the consumer).
+ *
+ * Each side waits with its own instance of the wait strategy (an instance
+ * belongs to a single waiting thread). The consumer's is signalled on every
+ * publish and used by {@link #await(int)} when the queue is empty; the
+ * producer's is signalled when slots are freed and used by
+ * {@link #put(Object)} when the queue is full.
+ *
+ * @author Vitor Enes
+ * @param <E>
+ */
+public class SpscRingBuffer<E> {
+
+    private final Object[] buffer;
+    private final int mask;
+    private final WaitStrategy wait;
+    private final WaitStrategy producerWait;
+    private final BooleanSupplier hasWork = () -> !isEmpty();
+    private final BooleanSupplier hasSpace = () -> size() < capacity();
+
+    // next slot to be read, written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // next slot to be written, written by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    // producer-local cache of head
+    private long headCache;
+    // consumer-local cache of tail
+    private long tailCache;
+
+    public SpscRingBuffer(int capacity) {
+        this(capacity, new WaitStrategy.Yield());
+    }
+
+    public SpscRingBuffer(int capacity, WaitStrategy wait) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity not supported: " + capacity);
+        }
+        int size = Math.max(Integer.highestOneBit(capacity - 1) << 1, 1);
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+        this.wait = wait;
+        this.producerWait = WaitStrategy.create(wait.name());
+    }
+
+    public int capacity() {
+        return this.buffer.length;
+    }
+
+    /**
+     * Producer only. Returns false if the queue is full.
+     */
+    public boolean offer(E e) {
+        long t = this.tail.get();
+        if (t - this.headCache >= this.buffer.length) {
+            this.headCache = this.head.get();
+            if (t - this.headCache >= this.buffer.length) {
+                return false;
+            }
+        }
+        this.buffer[(int) t & this.mask] = e;
+        this.tail.lazySet(t + 1);
+        this.wait.signal();
+        return true;
+    }
+
+    /**
+     * Producer only. Waits for a free slot if the queue is full.
+     */
+    public void put(E e) throws InterruptedException {
+        int round = 0;
+        while (!offer(e)) {
+            this.producerWait.idle(round++, this.hasSpace);
+        }
+    }
+
+    /**
+     * Consumer only. Returns null if the queue is empty.
+     */
+    public E poll() {
+        long h = this.head.get();
+        if (h >= this.tailCache) {
+            this.tailCache = this.tail.get();
+            if (h >= this.tailCache) {
+                return null;
+            }
+        }
+        int index = (int) h & this.mask;
+        E e = elementAt(index);
+        this.buffer[index] = null;
+        this.head.lazySet(h + 1);
+        this.producerWait.signal();
+        return e;
+    }
+
+    /**
+     * Consumer only. Moves up to max elements to the collection, returning
+     * how many were moved.
+     */
+    public int drainTo(Collection<? super E> c, int max) {
+        long h = this.head.get();
+        long available = this.tailCache - h;
+        if (available < max) {
+            this.tailCache = this.tail.get();
+            available = this.tailCache - h;
+        }
+        int n = (int) Math.min(available, max);
+        for (int i = 0; i < n; i++) {
+            int index = (int) (h + i) & this.mask;
+            c.add(elementAt(index));
+            this.buffer[index] = null;
+        }
+        if (n > 0) {
+            this.head.lazySet(h + n);
+            this.producerWait.signal();
+        }
+        return n;
+    }
+
+    /**
+     * Consumer only.
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, this.buffer.length);
+    }
+
+    /**
+     * Consumer only. Called after the round-th consecutive empty poll.
+     */
+    public void await(int round) throws InterruptedException {
+        this.wait.idle(round, this.hasWork);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementAt(int index) {
+        return (E) this.buffer[index];
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int size() {
+        // read head first, so that the result is never negative
+        long h = this.head.get();
+        return (int) (this.tail.get() - h);
+    }
+}
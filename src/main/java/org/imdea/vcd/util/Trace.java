@@ -7,7 +7,7 @@ import java.util.List;
 import org.imdea.vcd.queue.clock.Clock;
 import org.imdea.vcd.queue.clock.Dot;
 import org.imdea.vcd.queue.clock.ExceptionSet;
-import org.imdea.vcd.queue.clock.MaxInt;
+import org.imdea.vcd.queue.clock.VClock;
 
 /**
  *
@@ -35,7 +35,7 @@ public class Trace {
     private final TraceType type;
     private final Clock<ExceptionSet> committed;
     private final Dot dot;
-    private final Clock<MaxInt> conf;
+    private final VClock conf;
 
     public Trace(Clock<ExceptionSet> committed) {
         this.type = TraceType.COMMITTED;
@@ -44,7 +44,7 @@ public class Trace {
         this.conf = null;
     }
 
-    public Trace(Dot dot, Clock<MaxInt> conf) {
+    public Trace(Dot dot, VClock conf) {
         this.type = TraceType.COMMIT;
         this.committed = null;
         this.dot = dot;
@@ -63,7 +63,7 @@ public class Trace {
         return dot;
     }
 
-    public Clock<MaxInt> getConf() {
+    public VClock getConf() {
         return conf;
     }
 
@@ -80,10 +80,10 @@ public class Trace {
 
         for (Integer id = 0; id < committed.size(); id++) {
             ExceptionSet exceptionSet = committed.get(id);
-            HashSet<Long> exceptions = exceptionSet.getExceptions();
+            List<Long> exceptions = exceptionSet.getExceptions();
 
             // add SEQ
-            parts.add(exceptionSet.current().toString());
+            parts.add(Long.toString(exceptionSet.current()));
             // add EXCEPTION_NUMBER
             parts.add(Integer.toString(exceptions.size()));
             // add [EXCEPTION]
@@ -95,18 +95,18 @@ public class Trace {
         return String.join(SEP, parts);
     }
 
-    public static String encode(Dot dot, Clock<MaxInt> conf) {
+    public static String encode(Dot dot, VClock conf) {
         List<String> parts = new ArrayList<>();
         // serialize type
         parts.add(TraceType.COMMIT.getId().toString());
 
         // serialize dot
-        parts.add(dot.getId().toString());
-        parts.add(dot.getSeq().toString());
+        parts.add(Integer.toString(dot.getId()));
+        parts.add(Long.toString(dot.getSeq()));
 
         // serialize conf
         for (Integer id = 0; id < conf.size(); id++) {
-            parts.add(conf.get(id).current().toString());
+            parts.add(Long.toString(conf.get(id)));
         }
 
         return String.join(SEP, parts);
@@ -163,11 +163,10 @@ public class Trace {
         Dot dot = new Dot(id, seq);
 
         // decode conf
-        HashMap<Integer, MaxInt> map = new HashMap<>();
-        for (Integer i = 3; i < parts.length; i++) {
-            map.put(i - 3, new MaxInt(Long.parseLong(parts[i])));
+        VClock conf = new VClock(parts.length - 3);
+        for (int i = 3; i < parts.length; i++) {
+            conf.set(i - 3, Long.parseLong(parts[i]));
         }
-        Clock<MaxInt> conf = new Clock<>(map);
 
         // create trace
         Trace trace = new Trace(dot, conf);
@@ -0,0 +1,173 @@
+package org.imdea.vcd.util;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * What a consumer thread does while its input is empty (or a producer
+ * while its output is full).
+ *
+ * The consumer calls idle with the number of consecutive empty polls so
+ * far, and the producers call signal after publishing something. Each
+ * instance belongs to a single consumer thread. A producer that waits for
+ * free slots uses an instance of its own, signalled by the consumer.
+ *
+ * - blocking: park until a producer signals, re-checking for work every
+ *   1ms in case a wake-up is lost (lowest CPU, pays an atomic operation
+ *   per published element and a wake-up per idle period)
+ * - park: spin, then yield, then park for increasing periods up to 1ms
+ * - yield: spin, then yield
+ * - spin: busy-spin (lowest latency, one core per consumer)
+ *
+ * @author Vitor Enes
+ */
+public interface WaitStrategy {
+
+    /**
+     * Consumer only. Called after the round-th consecutive empty poll.
+     * hasWork tells if something was published in the meantime.
+     */
+    void idle(int round, BooleanSupplier hasWork) throws InterruptedException;
+
+    /**
+     * Producers only. Called after publishing.
+     */
+    void signal();
+
+    String name();
+
+    public static WaitStrategy create(String name) {
+        switch (name) {
+            case "blocking":
+                return new Blocking();
+            case "park":
+                return new Park();
+            case "yield":
+                return new Yield();
+            case "spin":
+                return new Spin();
+            default:
+                throw new IllegalArgumentException("Wait strategy not supported: " + name);
+        }
+    }
+
+    static void checkInterrupt() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    public static class Blocking implements WaitStrategy {
+
+        private static final long MAX_PARK = 1000000L; // 1ms
+
+        private final AtomicBoolean parked = new AtomicBoolean();
+        private volatile Thread consumer;
+
+        @Override
+        public void idle(int round, BooleanSupplier hasWork) throws InterruptedException {
+            checkInterrupt();
+            if (this.consumer == null) {
+                this.consumer = Thread.currentThread();
+            }
+
+            // announce before checking for work: a producer publishing
+            // after the check will see the flag and unpark us
+            // - the park is bounded, so that a lost wake-up (or a producer
+            //   that doesn't signal) only delays the consumer
+            this.parked.set(true);
+            while (!hasWork.getAsBoolean()) {
+                LockSupport.parkNanos(this, MAX_PARK);
+                checkInterrupt();
+                this.parked.set(true);
+            }
+            this.parked.set(false);
+        }
+
+        @Override
+        public void signal() {
+            // the atomic swap orders the publish before reading the flag
+            if (this.parked.getAndSet(false)) {
+                Thread c = this.consumer;
+                if (c != null) {
+                    LockSupport.unpark(c);
+                }
+            }
+        }
+
+        @Override
+        public String name() {
+            return "blocking";
+        }
+    }
+
+    public static class Park implements WaitStrategy {
+
+        private static final int SPINS = 100;
+        private static final int YIELDS = 100;
+        private static final long MAX_PARK = 1000000L; // 1ms
+
+        @Override
+        public void idle(int round, BooleanSupplier hasWork) throws InterruptedException {
+            checkInterrupt();
+            if (round < SPINS) {
+                return;
+            }
+            if (round < SPINS + YIELDS) {
+                Thread.yield();
+                return;
+            }
+            int parks = round - SPINS - YIELDS;
+            LockSupport.parkNanos(Math.min(MAX_PARK, 1000L << Math.min(parks, 10)));
+        }
+
+        @Override
+        public void signal() {
+        }
+
+        @Override
+        public String name() {
+            return "park";
+        }
+    }
+
+    public static class Yield implements WaitStrategy {
+
+        private static final int SPINS = 100;
+
+        @Override
+        public void idle(int round, BooleanSupplier hasWork) throws InterruptedException {
+            checkInterrupt();
+            if (round >= SPINS) {
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public void signal() {
+        }
+
+        @Override
+        public String name() {
+            return "yield";
+        }
+    }
+
+    public static class Spin implements WaitStrategy {
+
+        @Override
+        public void idle(int round, BooleanSupplier hasWork) throws InterruptedException {
+            checkInterrupt();
+        }
+
+        @Override
+        public void signal() {
+        }
+
+        @Override
+        public String name() {
+            return "spin";
+        }
+    }
+}
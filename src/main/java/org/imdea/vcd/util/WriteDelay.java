@@ -39,7 +39,7 @@ public class WriteDelay {
 
     public void commit(Dot dot, Clock<MaxInt> conf) {
         if (enabled) {
-            if (dot.getId().equals(this.site)) {
+            if (dot.getId() == this.site) {
                 this.committed.add(dot.getSeq());
             }
             this.dond.put(dot, conf.get(this.site).current());
@@ -0,0 +1,142 @@
+package org.imdea.vcd;
+
+import com.google.protobuf.ByteString;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.pb.Proto.MessageSet;
+import org.imdea.vcd.util.Batch;
+import org.imdea.vcd.util.SlabPool;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Vitor Enes
+ */
+public class AliasingFrameReaderTest {
+
+    private static final int COMMITS = 1000;
+    private static final int PAYLOAD_SIZE = 1024;
+
+    @Test
+    public void testSlabReuse() throws IOException {
+        SlabPool pool = new SlabPool(256 * 1024);
+        AliasingFrameReader reader = new AliasingFrameReader(Channels.newChannel(new ByteArrayInputStream(frames(COMMITS))), pool);
+
+        assertFalse(reader.readDecoded().hasCommit());
+
+        // keep all messages: slabs can't be reused
+        List<DecodedReply> replies = new ArrayList<>();
+        for (int seq = 1; seq <= COMMITS; seq++) {
+            DecodedReply reply = reader.readDecoded();
+            assertEquals(seq, reply.getDot().getSeq());
+            assertEquals(payload(seq), Batch.unpack(reply.getMessage()).get(0).getData());
+            replies.add(reply);
+        }
+        assertEquals(0, pool.free());
+
+        // the messages are still valid
+        for (int seq = 1; seq <= COMMITS; seq++) {
+            assertEquals(payload(seq), Batch.unpack(replies.get(seq - 1).getMessage()).get(0).getData());
+        }
+
+        // once released, the slabs the reader moved on from are back
+        for (DecodedReply reply : replies) {
+            reply.getSlab().release();
+        }
+        assertTrue(pool.free() > 0);
+    }
+
+    @Test
+    public void testDataRW() throws IOException, InterruptedException {
+        // everything runs in the reader thread, so all replies are
+        // notified before the end of the stream fails the reader
+        Config config = Config.parseArgs(new String[]{"-aliasing", "true", "-fused", "true"});
+        DataRW rw = new DataRW(
+                new DataInputStream(new ByteArrayInputStream(frames(COMMITS))),
+                new DataOutputStream(new ByteArrayOutputStream()),
+                config
+        );
+        rw.start();
+
+        int committed = 0;
+        int delivered = 0;
+        while (delivered < COMMITS) {
+            MessageSet messageSet = rw.read();
+            for (Message m : messageSet.getMessagesList()) {
+                // the data is valid until the next read
+                if (messageSet.getStatus() == MessageSet.Status.COMMIT) {
+                    assertEquals(payload(++committed), m.getData());
+                } else {
+                    assertEquals(payload(++delivered), m.getData());
+                }
+            }
+        }
+        assertEquals(COMMITS, committed);
+    }
+
+    @Test
+    public void testLiveSlabs() throws IOException, InterruptedException {
+        // 16 slabs worth of messages, and short rings: the reader can't
+        // get far ahead of the client
+        int commits = 4 * COMMITS;
+        SlabPool pool = new SlabPool(256 * 1024);
+        Config config = Config.parseArgs(new String[]{"-aliasing", "true", "-fused", "true", "-ring_capacity", "4"});
+        DataRW rw = new DataRW(
+                new AliasingFrameReader(Channels.newChannel(new ByteArrayInputStream(frames(commits))), pool),
+                new DataOutputStream(new ByteArrayOutputStream()),
+                config
+        );
+        rw.start();
+
+        // slabs are released as the client reads, and reused
+        int delivered = 0;
+        int maxLive = 0;
+        while (delivered < commits) {
+            MessageSet messageSet = rw.read();
+            if (messageSet.getStatus() == MessageSet.Status.DELIVERED) {
+                delivered += messageSet.getMessagesCount();
+            }
+            maxLive = Math.max(maxLive, pool.live());
+        }
+        assertTrue(maxLive <= 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAsync() throws IOException {
+        // in async mode, slabs would never be released
+        Config config = Config.parseArgs(new String[]{"-aliasing", "true", "-async", "true"});
+        new DataRW(
+                new AliasingFrameReader(Channels.newChannel(new ByteArrayInputStream(frames(COMMITS)))),
+                new DataOutputStream(new ByteArrayOutputStream()),
+                config
+        );
+    }
+
+    private static byte[] frames(int commits) throws IOException {
+        List<Message> messages = new ArrayList<>();
+        for (int seq = 1; seq <= commits; seq++) {
+            Message message = Message.newBuilder()
+                    .addHashes(Generator.BLACK)
+                    .setData(payload(seq))
+                    .build();
+            messages.add(Batch.pack(Arrays.asList(message)));
+        }
+        return Generator.frames(messages);
+    }
+
+    private static ByteString payload(int seq) {
+        byte[] data = new byte[PAYLOAD_SIZE];
+        Arrays.fill(data, (byte) seq);
+        data[0] = (byte) (seq >> 8);
+        return ByteString.copyFrom(data);
+    }
+}
@@ -0,0 +1,85 @@
+package org.imdea.vcd;
+
+import com.google.protobuf.ByteString;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.imdea.vcd.pb.Proto;
+import org.imdea.vcd.pb.Proto.Reply;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Vitor Enes
+ */
+public class ChannelFrameReaderTest {
+
+    private static final int COMMITS = 1000;
+    // larger than the buffer of the reader
+    private static final int LARGE = 300 * 1024;
+
+    @Test
+    public void testRead() throws IOException {
+        check(new ByteArrayInputStream(frames()));
+    }
+
+    @Test
+    public void testPartialReads() throws IOException {
+        // the channel returns a few bytes at a time
+        check(new FilterInputStream(new ByteArrayInputStream(frames())) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        });
+    }
+
+    private static void check(InputStream in) throws IOException {
+        ChannelFrameReader reader = new ChannelFrameReader(Channels.newChannel(in));
+        assertFalse(reader.readDecoded().hasCommit());
+
+        // parsed and decoded frames, alternately
+        for (int seq = 1; seq <= COMMITS; seq++) {
+            if (seq % 2 == 0) {
+                Reply reply = reader.read();
+                assertEquals(seq, reply.getCommit().getDot().getSeq());
+                assertEquals(payload(seq), reply.getCommit().getMessage().getData());
+            } else {
+                DecodedReply reply = reader.readDecoded();
+                assertEquals(seq, reply.getDot().getSeq());
+                assertEquals(payload(seq), reply.getMessage().getData());
+            }
+        }
+
+        try {
+            reader.read();
+            fail();
+        } catch (EOFException e) {
+        }
+        reader.close();
+    }
+
+    private static byte[] frames() throws IOException {
+        List<Proto.Message> messages = new ArrayList<>();
+        for (int seq = 1; seq <= COMMITS; seq++) {
+            messages.add(Proto.Message.newBuilder().addHashes(Generator.BLACK).setData(payload(seq)).build());
+        }
+        return Generator.frames(messages);
+    }
+
+    private static ByteString payload(int seq) {
+        // sizes vary, and a few frames don't fit in the buffer
+        int size = seq % 250 == 0 ? LARGE : new Random(seq).nextInt(2000);
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) seq);
+        return ByteString.copyFrom(data);
+    }
+}
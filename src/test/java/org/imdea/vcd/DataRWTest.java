@@ -0,0 +1,161 @@
+package org.imdea.vcd;
+
+import com.google.protobuf.ByteString;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.pb.Proto.MessageSet;
+import org.imdea.vcd.util.Batch;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Vitor Enes
+ */
+public class DataRWTest {
+
+    private static final int COMMITS = 100;
+    private static final ByteString OWN = ByteString.copyFromUtf8("own");
+    private static final ByteString OTHER = ByteString.copyFromUtf8("other");
+
+    @Test
+    public void testCommitsAll() throws IOException, InterruptedException {
+        List<MessageSet> sets = run("all");
+        assertEquals(COMMITS, count(sets, MessageSet.Status.COMMIT));
+        assertEquals(COMMITS, count(sets, MessageSet.Status.DELIVERED));
+    }
+
+    @Test
+    public void testCommitsOwn() throws IOException, InterruptedException {
+        List<MessageSet> sets = run("own");
+        assertEquals(COMMITS / 2, count(sets, MessageSet.Status.COMMIT));
+        assertEquals(COMMITS, count(sets, MessageSet.Status.DELIVERED));
+        for (MessageSet messageSet : sets) {
+            if (messageSet.getStatus() == MessageSet.Status.COMMIT) {
+                for (Message m : messageSet.getMessagesList()) {
+                    assertEquals(OWN, m.getFrom());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCommitsOwnInFlight() throws IOException, InterruptedException {
+        // only commits of messages written, and not yet committed
+        List<MessageSet> sets = run("own", 10);
+        assertEquals(10, count(sets, MessageSet.Status.COMMIT));
+        assertEquals(COMMITS, count(sets, MessageSet.Status.DELIVERED));
+    }
+
+    @Test
+    public void testCommitsNone() throws IOException, InterruptedException {
+        List<MessageSet> sets = run("none");
+        assertEquals(0, count(sets, MessageSet.Status.COMMIT));
+        assertEquals(COMMITS, count(sets, MessageSet.Status.DELIVERED));
+    }
+
+    @Test
+    public void testCommitBeforeDelivery() throws IOException, InterruptedException {
+        for (int run = 0; run < 20; run++) {
+            // commits and deliveries are notified by different threads
+            Config config = Config.parseArgs(new String[]{"-commits", "all"});
+            PipedOutputStream end = new PipedOutputStream();
+            DataRW rw = new DataRW(
+                    new DataInputStream(new SequenceInputStream(
+                            new ByteArrayInputStream(frames()),
+                            new PipedInputStream(end)
+                    )),
+                    new DataOutputStream(new ByteArrayOutputStream()),
+                    config
+            );
+            List<MessageSet> sets = run(rw, 0);
+            end.close();
+            rw.close();
+
+            Set<ByteString> committed = new HashSet<>();
+            for (MessageSet messageSet : sets) {
+                for (Message m : messageSet.getMessagesList()) {
+                    if (messageSet.getStatus() == MessageSet.Status.COMMIT) {
+                        committed.add(m.getData());
+                    } else {
+                        assertTrue(committed.contains(m.getData()));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads message sets until all commits are delivered.
+     */
+    private static List<MessageSet> run(String commits) throws IOException, InterruptedException {
+        return run(commits, COMMITS / 2);
+    }
+
+    /**
+     * Same, with some of the messages from this client written before.
+     */
+    private static List<MessageSet> run(String commits, int writes) throws IOException, InterruptedException {
+        // everything runs in the reader thread, so all replies are
+        // notified before the end of the stream fails the reader
+        Config config = Config.parseArgs(new String[]{"-commits", commits, "-fused", "true"});
+        DataRW rw = new DataRW(
+                new DataInputStream(new ByteArrayInputStream(frames())),
+                new DataOutputStream(new ByteArrayOutputStream()),
+                config
+        );
+        return run(rw, writes);
+    }
+
+    private static List<MessageSet> run(DataRW rw, int writes) throws IOException, InterruptedException {
+        for (int seq = 2; seq <= writes * 2; seq += 2) {
+            rw.write(message(seq, OWN));
+        }
+        rw.start();
+
+        List<MessageSet> sets = new ArrayList<>();
+        while (count(sets, MessageSet.Status.DELIVERED) < COMMITS) {
+            sets.add(rw.read());
+        }
+        return sets;
+    }
+
+    private static int count(List<MessageSet> sets, MessageSet.Status status) {
+        int count = 0;
+        for (MessageSet messageSet : sets) {
+            if (messageSet.getStatus() == status) {
+                count += messageSet.getMessagesCount();
+            }
+        }
+        return count;
+    }
+
+    private static byte[] frames() throws IOException {
+        // every other commit is from this client
+        List<Message> messages = new ArrayList<>();
+        for (int seq = 1; seq <= COMMITS; seq++) {
+            messages.add(Batch.pack(Arrays.asList(message(seq, seq % 2 == 0 ? OWN : OTHER))));
+        }
+        return Generator.frames(messages);
+    }
+
+    private static Message message(int seq, ByteString from) {
+        return Message.newBuilder()
+                .addHashes(Generator.BLACK)
+                .setData(ByteString.copyFromUtf8("" + seq))
+                .setFrom(from)
+                .build();
+    }
+}
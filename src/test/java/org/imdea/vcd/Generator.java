@@ -1,13 +1,18 @@
 package org.imdea.vcd;
 
 import com.google.protobuf.ByteString;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
+import org.imdea.vcd.pb.Proto;
 import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.pb.Proto.Reply;
 import org.imdea.vcd.queue.clock.Clock;
 import org.imdea.vcd.queue.clock.Dot;
 import org.imdea.vcd.queue.clock.MaxInt;
@@ -125,6 +130,40 @@ public class Generator {
         return ranges;
     }
 
+    /**
+     * The length-prefixed replies a server would send: an init for two
+     * nodes, and then a commit from node 0 for each message, each one
+     * conflicting with the previous one.
+     */
+    public static byte[] frames(List<Message> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        Proto.Init.Builder init = Proto.Init.newBuilder();
+        for (int id = 0; id < 2; id++) {
+            init.putCommitted(id, Proto.ExceptionSet.newBuilder().setSeq(0).build());
+        }
+        write(out, Reply.newBuilder().setInit(init).build());
+
+        for (int seq = 1; seq <= messages.size(); seq++) {
+            Proto.Commit commit = Proto.Commit.newBuilder()
+                    .setDot(Proto.Dot.newBuilder().setId(0).setSeq(seq))
+                    .setMessage(messages.get(seq - 1))
+                    .putConf(0, seq)
+                    .putConf(1, 0L)
+                    .build();
+            write(out, Reply.newBuilder().setCommit(commit).build());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void write(DataOutputStream out, Reply reply) throws IOException {
+        byte[] data = reply.toByteArray();
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
     public static ByteString randomClientKey() {
         return randomByteString(KEY_SIZE);
     }
@@ -0,0 +1,96 @@
+package org.imdea.vcd;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.IOException;
+import java.util.Arrays;
+import org.imdea.vcd.pb.Proto;
+import org.imdea.vcd.pb.Proto.Reply;
+import org.imdea.vcd.queue.clock.Clock;
+import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.queue.clock.VClock;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Vitor Enes
+ */
+public class ReplyDecoderTest {
+
+    @Test
+    public void testCommit() throws IOException {
+        Proto.Message message = Proto.Message.newBuilder()
+                .addHashes(Generator.BLACK)
+                .setData(ByteString.copyFromUtf8("data"))
+                .build();
+        Proto.Commit commit = Proto.Commit.newBuilder()
+                .setDot(Proto.Dot.newBuilder().setId(2).setSeq(17L))
+                .setMessage(message)
+                .putDep(0, Proto.ExceptionSet.newBuilder().setSeq(3L).build())
+                .putConf(0, 10L)
+                .putConf(1, 0L)
+                .putConf(2, 16L)
+                .build();
+        byte[] data = Reply.newBuilder().setCommit(commit).build().toByteArray();
+
+        ReplyDecoder decoder = new ReplyDecoder();
+        // twice, the second with the node number from the first
+        for (int i = 0; i < 2; i++) {
+            DecodedReply reply = decoder.decode(data);
+            assertTrue(reply.hasCommit());
+            assertEquals(new Dot(2, 17L), reply.getDot());
+            assertEquals(message, reply.getMessage());
+            assertEquals(new VClock(10L, 0L, 16L), reply.getConf());
+            assertEquals(VClock.vclock(commit.getConfMap()), reply.getConf());
+            assertNull(reply.getDep());
+        }
+    }
+
+    @Test(expected = InvalidProtocolBufferException.class)
+    public void testCommitWithoutDot() throws IOException {
+        Proto.Commit commit = Proto.Commit.newBuilder()
+                .setMessage(Proto.Message.newBuilder().addHashes(Generator.BLACK))
+                .putConf(0, 10L)
+                .build();
+        byte[] data = Reply.newBuilder().setCommit(commit).build().toByteArray();
+
+        new ReplyDecoder().decode(data);
+    }
+
+    @Test
+    public void testDep() throws IOException {
+        Proto.Commit commit = Proto.Commit.newBuilder()
+                .setDot(Proto.Dot.newBuilder().setId(0).setSeq(11L))
+                .setMessage(Proto.Message.newBuilder().addHashes(Generator.BLACK))
+                .putDep(0, Proto.ExceptionSet.newBuilder().setSeq(10L).addAllEx(Arrays.asList(2L, 3L, 7L)).build())
+                .putDep(2, Proto.ExceptionSet.newBuilder().setSeq(4L).build())
+                .putConf(0, 10L)
+                .putConf(1, 0L)
+                .putConf(2, 4L)
+                .build();
+        byte[] data = Reply.newBuilder().setCommit(commit).build().toByteArray();
+
+        DecodedReply reply = new ReplyDecoder(true).decode(data);
+        Proto.Commit expected = commit.toBuilder()
+                .putDep(1, Proto.ExceptionSet.newBuilder().setSeq(0L).build())
+                .build();
+        assertEquals(Clock.eclock(expected.getDepMap()), reply.getDep());
+        assertEquals(new VClock(10L, 0L, 4L), reply.getConf());
+    }
+
+    @Test
+    public void testInit() throws IOException {
+        Proto.Init init = Proto.Init.newBuilder()
+                .putCommitted(0, Proto.ExceptionSet.newBuilder().setSeq(10L).addAllEx(Arrays.asList(2L, 3L, 7L)).build())
+                .putCommitted(1, Proto.ExceptionSet.newBuilder().setSeq(4L).build())
+                .setSite(1)
+                .build();
+        byte[] data = Reply.newBuilder().setInit(init).build().toByteArray();
+
+        DecodedReply reply = new ReplyDecoder().decode(data);
+        assertFalse(reply.hasCommit());
+        assertEquals(1, reply.getSite());
+        assertEquals(Clock.eclock(init.getCommittedMap()), reply.getCommitted());
+    }
+}
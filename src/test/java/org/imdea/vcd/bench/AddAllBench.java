@@ -0,0 +1,72 @@
+package org.imdea.vcd.bench;
+
+import java.util.List;
+import java.util.Random;
+import org.imdea.vcd.queue.Commit;
+import org.imdea.vcd.queue.CommitTrace;
+import org.imdea.vcd.queue.ConfQueue;
+
+/**
+ * Compares adding bursts of commits one by one with adding them with
+ * addAll.
+ *
+ * Commits arrive out of order (each delayed by up to DELAY positions, see
+ * CommitTrace.generate), in bursts of BURST commits, and the queue is
+ * drained after each burst.
+ *
+ * Usage: AddAllBench [COMMITS] [NODE_NUMBER] [COLORS] [BURST]
+ *
+ * @author Vitor Enes
+ */
+public class AddAllBench {
+
+    private static final int ROUNDS = 5;
+    private static final int CONCURRENCY = 4;
+    private static final int DELAY = 64;
+
+    public static void main(String[] args) throws Exception {
+        int commits = Bench.intArg(args, 0, 200000);
+        int nodeNumber = Bench.intArg(args, 1, 5);
+        int colors = Bench.intArg(args, 2, 10);
+        int burst = Bench.intArg(args, 3, 64);
+
+        Random random = new Random(42);
+        CommitTrace trace = CommitTrace.generate(commits, nodeNumber, colors, CONCURRENCY, random).delay(DELAY, random);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            for (boolean all : new boolean[]{false, true}) {
+                for (boolean batching : new boolean[]{false, true}) {
+                    run(all, batching, trace, burst);
+                }
+            }
+        }
+    }
+
+    private static void run(boolean all, boolean batching, CommitTrace trace, int burst) throws Exception {
+        ConfQueue queue = new ConfQueue(batching, true);
+        queue.init(trace.getCommitted());
+        List<Commit> commits = trace.getCommits();
+        int delivered = 0;
+
+        long bytes = Bench.allocatedBytes();
+        long start = System.nanoTime();
+        for (int from = 0; from < commits.size(); from += burst) {
+            List<Commit> commitsBurst = commits.subList(from, Math.min(from + burst, commits.size()));
+            if (all) {
+                delivered += queue.addAll(commitsBurst).size();
+            } else {
+                for (Commit commit : commitsBurst) {
+                    queue.add(commit.getDot(), commit.getMessage(), commit.getConf());
+                }
+                delivered += queue.drainDeliverable().size();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        bytes = Bench.allocatedBytes() - bytes;
+
+        if (queue.elements() != 0 || delivered == 0) {
+            throw new IllegalStateException("Not all commits were delivered");
+        }
+        Bench.report((all ? "addAll" : "add") + (batching ? "-batching" : ""), commits.size(), nanos, bytes);
+    }
+}
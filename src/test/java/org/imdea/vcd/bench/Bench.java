@@ -0,0 +1,31 @@
+package org.imdea.vcd.bench;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Helpers shared by the benchmarks.
+ *
+ * @author Vitor Enes
+ */
+public class Bench {
+
+    private static final com.sun.management.ThreadMXBean THREADS
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Bytes allocated so far by the current thread.
+     */
+    public static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void report(String name, long ops, long nanos, long bytes) {
+        double seconds = nanos / 1e9;
+        System.out.println(String.format("%-32s %12.0f ops/s %10.1f ns/op %10.1f B/op",
+                name, ops / seconds, (double) nanos / ops, (double) bytes / ops));
+    }
+
+    public static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+}
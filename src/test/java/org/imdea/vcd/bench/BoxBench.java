@@ -0,0 +1,59 @@
+package org.imdea.vcd.bench;
+
+import java.util.Random;
+import org.imdea.vcd.Generator;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.queue.ConfQueueBox;
+import org.imdea.vcd.queue.clock.Dot;
+
+/**
+ * Cost of creating the boxes of SCCs of a given size (as saveSCC in
+ * ConfQueue does: a box per vertex, merged into one) and of reading them
+ * back (as the deliverer does).
+ *
+ * Usage: BoxBench [MESSAGES] [NODE_NUMBER]
+ *
+ * @author Vitor Enes
+ */
+public class BoxBench {
+
+    private static final int ROUNDS = 5;
+    private static final int[] SCC_SIZES = new int[]{1, 2, 8, 64, 512};
+
+    public static void main(String[] args) {
+        int messages = Bench.intArg(args, 0, 2000000);
+        int nodeNumber = Bench.intArg(args, 1, 5);
+
+        Random random = new Random(42);
+        Dot[] dots = new Dot[messages];
+        for (int i = 0; i < messages; i++) {
+            dots[i] = new Dot(random.nextInt(nodeNumber), (long) i + 1);
+        }
+        Message message = Generator.message("red");
+
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int sccSize : SCC_SIZES) {
+                long sink = 0;
+                long bytes = Bench.allocatedBytes();
+                long start = System.nanoTime();
+                for (int from = 0; from + sccSize <= messages; from += sccSize) {
+                    ConfQueueBox[] boxes = new ConfQueueBox[sccSize];
+                    for (int i = 0; i < sccSize; i++) {
+                        boxes[i] = new ConfQueueBox(dots[from + i], message);
+                    }
+                    ConfQueueBox box = ConfQueueBox.merge(boxes);
+                    for (Dot dot : box.getDots()) {
+                        sink += dot.getSeq();
+                    }
+                    sink += box.sortMessages().size();
+                }
+                long nanos = System.nanoTime() - start;
+                bytes = Bench.allocatedBytes() - bytes;
+                if (sink == 0) {
+                    throw new IllegalStateException();
+                }
+                Bench.report("scc-" + sccSize, messages, nanos, bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.imdea.vcd.bench;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.queue.Commit;
+import org.imdea.vcd.queue.CommitTrace;
+import org.imdea.vcd.queue.ConfQueue;
+import org.imdea.vcd.queue.ConfQueueBox;
+
+/**
+ * Throughput of a batching ConfQueue (where conflicts between the vertices
+ * are checked by their colors) when each message has many colors.
+ *
+ * Each message is a batch: the color of the generated trace (see
+ * CommitTrace.generate), plus COLORS_PER_MESSAGE - 1 keys drawn from KEYS.
+ *
+ * Usage: ColorsBench [COMMITS] [NODE_NUMBER] [COLORS_PER_MESSAGE] [KEYS]
+ *
+ * @author Vitor Enes
+ */
+public class ColorsBench {
+
+    private static final int ROUNDS = 5;
+    private static final int COLORS = 100;
+    private static final int CONCURRENCY = 4;
+    private static final int DELAY = 16;
+
+    public static void main(String[] args) throws Exception {
+        int commits = Bench.intArg(args, 0, 200000);
+        int nodeNumber = Bench.intArg(args, 1, 5);
+        int colorsPerMessage = Bench.intArg(args, 2, 32);
+        int keys = Bench.intArg(args, 3, 100000);
+
+        Random random = new Random(42);
+        CommitTrace generated = CommitTrace.generate(commits, nodeNumber, COLORS, CONCURRENCY, random).delay(DELAY, random);
+        List<Commit> batches = new ArrayList<>();
+        for (Commit commit : generated.getCommits()) {
+            Message.Builder builder = commit.getMessage().toBuilder();
+            for (int i = 1; i < colorsPerMessage; i++) {
+                builder.addHashes(ByteString.copyFromUtf8("key-" + random.nextInt(keys)));
+            }
+            batches.add(new Commit(commit.getDot(), builder.build(), commit.getConf()));
+        }
+        CommitTrace trace = new CommitTrace(generated.getCommitted(), batches);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            ConfQueue queue = new ConfQueue(true, true);
+            long bytes = Bench.allocatedBytes();
+            long start = System.nanoTime();
+            List<ConfQueueBox> result = trace.replay(queue);
+            long nanos = System.nanoTime() - start;
+            bytes = Bench.allocatedBytes() - bytes;
+
+            if (queue.elements() != 0 || result.isEmpty()) {
+                throw new IllegalStateException("Not all commits were delivered");
+            }
+            Bench.report("colors-" + colorsPerMessage, trace.getCommits().size(), nanos, bytes);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.imdea.vcd.bench;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+import org.imdea.vcd.queue.CommitTrace;
+import org.imdea.vcd.queue.ConfQueue;
+import org.imdea.vcd.queue.ConfQueueBox;
+import org.imdea.vcd.queue.DeliveryEngine;
+import org.imdea.vcd.queue.PartitionedQueue;
+
+/**
+ * Replays the same trace against every delivery engine.
+ *
+ * The trace is read from a file recorded by the parser (see RECORD_TRACE in
+ * DataRW) if one is given, and generated otherwise (see
+ * CommitTrace.generate), with each commit delayed by up to DELAY positions.
+ *
+ * Usage: DeliveryEngineBench [COMMITS] [NODE_NUMBER] [COLORS] [TRACE_FILE]
+ *
+ * @author Vitor Enes
+ */
+public class DeliveryEngineBench {
+
+    private static final int ROUNDS = 5;
+    private static final int CONCURRENCY = 4;
+    private static final int DELAY = 16;
+
+    private static final Map<String, Supplier<DeliveryEngine>> ENGINES = new LinkedHashMap<>();
+
+    static {
+        ENGINES.put("conf", () -> new ConfQueue(false, true));
+        ENGINES.put("conf-batching", () -> new ConfQueue(true, true));
+        ENGINES.put("partitioned", () -> new PartitionedQueue(4, false, true));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int commits = Bench.intArg(args, 0, 200000);
+        int nodeNumber = Bench.intArg(args, 1, 5);
+        int colors = Bench.intArg(args, 2, 100);
+
+        Random random = new Random(42);
+        CommitTrace trace = args.length > 3
+                ? CommitTrace.read(args[3])
+                : CommitTrace.generate(commits, nodeNumber, colors, CONCURRENCY, random).delay(DELAY, random);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Map.Entry<String, Supplier<DeliveryEngine>> entry : ENGINES.entrySet()) {
+                DeliveryEngine engine = entry.getValue().get();
+                long bytes = Bench.allocatedBytes();
+                long start = System.nanoTime();
+                List<ConfQueueBox> result = trace.replay(engine);
+                long nanos = System.nanoTime() - start;
+                bytes = Bench.allocatedBytes() - bytes;
+
+                if (engine.elements() != 0 || result.isEmpty()) {
+                    throw new IllegalStateException("Not all commits were delivered");
+                }
+                engine.close();
+                Bench.report(entry.getKey(), trace.getCommits().size(), nanos, bytes);
+            }
+        }
+    }
+}
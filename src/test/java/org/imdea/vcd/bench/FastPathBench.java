@@ -0,0 +1,52 @@
+package org.imdea.vcd.bench;
+
+import java.util.List;
+import java.util.Random;
+import org.imdea.vcd.queue.CommitTrace;
+import org.imdea.vcd.queue.ConfQueue;
+import org.imdea.vcd.queue.ConfQueueBox;
+
+/**
+ * Throughput of a ConfQueue when conflicts are rare and commits arrive
+ * almost in order, so that the dependencies of most commits are already
+ * delivered when they're added (see CommitTrace.generate, with each commit
+ * delayed by up to DELAY positions).
+ *
+ * Usage: FastPathBench [COMMITS] [NODE_NUMBER] [COLORS] [CONCURRENCY]
+ *
+ * @author Vitor Enes
+ */
+public class FastPathBench {
+
+    private static final int ROUNDS = 5;
+    private static final int DELAY = 2;
+
+    public static void main(String[] args) throws Exception {
+        int commits = Bench.intArg(args, 0, 500000);
+        int nodeNumber = Bench.intArg(args, 1, 5);
+        int colors = Bench.intArg(args, 2, 1000);
+        int concurrency = Bench.intArg(args, 3, 1);
+
+        Random random = new Random(42);
+        CommitTrace trace = CommitTrace.generate(commits, nodeNumber, colors, concurrency, random).delay(DELAY, random);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            for (boolean batching : new boolean[]{false, true}) {
+                ConfQueue queue = new ConfQueue(batching, true);
+                long bytes = Bench.allocatedBytes();
+                long start = System.nanoTime();
+                List<ConfQueueBox> result = trace.replay(queue);
+                long nanos = System.nanoTime() - start;
+                bytes = Bench.allocatedBytes() - bytes;
+
+                if (queue.elements() != 0 || result.isEmpty()) {
+                    throw new IllegalStateException("Not all commits were delivered");
+                }
+                String name = String.format("%s (fast path %.0f%%)",
+                        batching ? "conf-batching" : "conf",
+                        100 * queue.fastPathRate());
+                Bench.report(name, trace.getCommits().size(), nanos, bytes);
+            }
+        }
+    }
+}
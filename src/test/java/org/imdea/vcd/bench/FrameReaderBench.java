@@ -0,0 +1,110 @@
+package org.imdea.vcd.bench;
+
+import com.google.protobuf.ByteString;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.SocketChannel;
+import org.imdea.vcd.ChannelFrameReader;
+import org.imdea.vcd.FrameReader;
+import org.imdea.vcd.Generator;
+import org.imdea.vcd.StreamFrameReader;
+import org.imdea.vcd.pb.Proto;
+import org.imdea.vcd.pb.Proto.Reply;
+
+/**
+ * Compares the DataInputStream and the SocketChannel frame readers.
+ *
+ * A writer thread sends the same commit replies over a loopback connection,
+ * and the main thread reads them, measuring throughput and bytes allocated
+ * per frame. Each reader is run both parsing a Reply and decoding it (as
+ * DataRW does).
+ *
+ * Usage: FrameReaderBench [FRAMES] [PAYLOAD_SIZE] [NODE_NUMBER]
+ *
+ * @author Vitor Enes
+ */
+public class FrameReaderBench {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int frames = Bench.intArg(args, 0, 200000);
+        int payloadSize = Bench.intArg(args, 1, 100);
+        int nodeNumber = Bench.intArg(args, 2, 5);
+
+        byte[] frame = frame(payloadSize, nodeNumber);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            run("stream", frame, frames, false, false);
+            run("nio", frame, frames, true, false);
+            run("stream-decoded", frame, frames, false, true);
+            run("nio-decoded", frame, frames, true, true);
+        }
+    }
+
+    private static void run(String name, byte[] frame, int frames, boolean nio, boolean decoded) throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread writer = writer(server, frame, frames);
+            writer.start();
+
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getLocalPort());
+            FrameReader reader;
+            if (nio) {
+                reader = new ChannelFrameReader(SocketChannel.open(address));
+            } else {
+                java.net.Socket socket = new java.net.Socket(address.getAddress(), address.getPort());
+                reader = new StreamFrameReader(new DataInputStream(socket.getInputStream()));
+            }
+
+            long bytes = Bench.allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                boolean commit = decoded
+                        ? reader.readDecoded().hasCommit()
+                        : reader.read().hasCommit();
+                if (!commit) {
+                    throw new IllegalStateException();
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            bytes = Bench.allocatedBytes() - bytes;
+
+            Bench.report(name, frames, nanos, bytes);
+            reader.close();
+            writer.join();
+        }
+    }
+
+    private static Thread writer(ServerSocket server, byte[] frame, int frames) {
+        return new Thread(() -> {
+            try (java.net.Socket socket = server.accept()) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                for (int i = 0; i < frames; i++) {
+                    out.writeInt(frame.length);
+                    out.write(frame);
+                }
+                out.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private static byte[] frame(int payloadSize, int nodeNumber) {
+        Proto.Message message = Proto.Message.newBuilder()
+                .addHashes(Generator.BLACK)
+                .setData(ByteString.copyFrom(new byte[payloadSize]))
+                .build();
+        Proto.Commit.Builder commit = Proto.Commit.newBuilder()
+                .setDot(Proto.Dot.newBuilder().setId(0).setSeq(1000000L))
+                .setMessage(message);
+        for (int id = 0; id < nodeNumber; id++) {
+            commit.putConf(id, 1000000L + id);
+        }
+        return Reply.newBuilder().setCommit(commit).build().toByteArray();
+    }
+}
@@ -0,0 +1,68 @@
+package org.imdea.vcd.bench;
+
+import java.util.Random;
+import org.imdea.vcd.queue.Commit;
+import org.imdea.vcd.queue.CommitTrace;
+import org.imdea.vcd.queue.ConfQueue;
+import org.imdea.vcd.queue.DeliveryEngine;
+import org.imdea.vcd.queue.PartitionedQueue;
+
+/**
+ * Throughput of the partitioned delivery engine with an increasing number of
+ * partitions, against a single ConfQueue.
+ *
+ * Commits are drained once every BATCH adds (as the queue runner does when
+ * several commits are waiting), so that the partitions run in parallel.
+ * With many colors, conflicts are rare and the work is spread evenly.
+ *
+ * Usage: PartitionedQueueBench [COMMITS] [NODE_NUMBER] [COLORS] [BATCH]
+ *
+ * @author Vitor Enes
+ */
+public class PartitionedQueueBench {
+
+    private static final int ROUNDS = 5;
+    private static final int CONCURRENCY = 4;
+    private static final int DELAY = 16;
+    private static final int[] PARTITIONS = new int[]{1, 2, 4, 8};
+
+    public static void main(String[] args) throws Exception {
+        int commits = Bench.intArg(args, 0, 500000);
+        int nodeNumber = Bench.intArg(args, 1, 5);
+        int colors = Bench.intArg(args, 2, 1000);
+        int batch = Bench.intArg(args, 3, 1024);
+
+        Random random = new Random(42);
+        CommitTrace trace = CommitTrace.generate(commits, nodeNumber, colors, CONCURRENCY, random).delay(DELAY, random);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            run("conf", new ConfQueue(false, true), trace, batch);
+            for (int partitions : PARTITIONS) {
+                run("partitioned-" + partitions, new PartitionedQueue(partitions, false, true), trace, batch);
+            }
+        }
+    }
+
+    private static void run(String name, DeliveryEngine engine, CommitTrace trace, int batch) throws Exception {
+        int delivered = 0;
+        long bytes = Bench.allocatedBytes();
+        long start = System.nanoTime();
+        engine.init(trace.getCommitted());
+        int added = 0;
+        for (Commit commit : trace.getCommits()) {
+            engine.add(commit.getDot(), commit.getMessage(), commit.getConf());
+            if (++added % batch == 0) {
+                delivered += engine.drainDeliverable().size();
+            }
+        }
+        delivered += engine.drainDeliverable().size();
+        long nanos = System.nanoTime() - start;
+        bytes = Bench.allocatedBytes() - bytes;
+        engine.close();
+
+        if (engine.elements() != 0 || delivered == 0) {
+            throw new IllegalStateException("Not all commits were delivered");
+        }
+        Bench.report(name, trace.getCommits().size(), nanos, bytes);
+    }
+}
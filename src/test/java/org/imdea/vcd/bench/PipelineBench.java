@@ -0,0 +1,173 @@
+package org.imdea.vcd.bench;
+
+import com.google.protobuf.ByteString;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import org.imdea.vcd.Config;
+import org.imdea.vcd.DataRW;
+import org.imdea.vcd.Generator;
+import org.imdea.vcd.pb.Proto;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.pb.Proto.MessageSet;
+import org.imdea.vcd.pb.Proto.Reply;
+import org.imdea.vcd.util.Batch;
+
+/**
+ * Compares the pipelined and the fused DataRW modes.
+ *
+ * A writer thread sends an init and then commits at a fixed rate over a
+ * loopback connection, each commit carrying its send time. The main thread
+ * reads from DataRW and measures, for each delivered message, the time from
+ * send to delivery. A rate of 0 means as fast as possible, which gives the
+ * throughput of each mode.
+ *
+ * Usage: PipelineBench [COMMITS] [NODE_NUMBER] [WAIT_STRATEGY]
+ *
+ * @author Vitor Enes
+ */
+public class PipelineBench {
+
+    private static final int[] RATES = new int[]{1000, 10000, 50000, 100000, 0};
+    private static final int UNPACED_FLUSH = 64;
+
+    public static void main(String[] args) throws Exception {
+        int commits = Bench.intArg(args, 0, 100000);
+        int nodeNumber = Bench.intArg(args, 1, 3);
+        String waitStrategy = args.length > 2 ? args[2] : "park";
+
+        // warm-up
+        run(false, 0, commits, nodeNumber, waitStrategy);
+        run(true, 0, commits, nodeNumber, waitStrategy);
+
+        System.out.println(String.format("%-10s %8s %12s %10s %10s",
+                "mode", "rate", "ops/s", "p50 us", "p99 us"));
+        for (int rate : RATES) {
+            for (boolean fused : new boolean[]{false, true}) {
+                int n = rate == 0 ? commits : Math.min(commits, rate * 2);
+                long[] result = run(fused, rate, n, nodeNumber, waitStrategy);
+                System.out.println(String.format("%-10s %8d %12d %10.1f %10.1f",
+                        fused ? "fused" : "pipelined", rate, result[0],
+                        result[1] / 1000.0, result[2] / 1000.0));
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Returns throughput, p50 and p99 latency (in nanoseconds).
+     */
+    private static long[] run(boolean fused, int rate, int commits, int nodeNumber, String waitStrategy) throws Exception {
+        Config config = Config.parseArgs(new String[]{
+            "-fused", String.valueOf(fused),
+            "-wait_strategy", waitStrategy
+        });
+
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread writer = writer(server, rate, commits, nodeNumber);
+            writer.start();
+
+            java.net.Socket socket = new java.net.Socket("127.0.0.1", server.getLocalPort());
+            DataRW rw = new DataRW(
+                    new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+                    new DataOutputStream(socket.getOutputStream()),
+                    config
+            );
+            rw.start();
+
+            long[] latencies = new long[commits];
+            int delivered = 0;
+            long start = System.nanoTime();
+            while (delivered < commits) {
+                MessageSet messageSet = rw.read();
+                if (messageSet.getStatus() != MessageSet.Status.DELIVERED) {
+                    continue;
+                }
+                long now = System.nanoTime();
+                for (Message m : messageSet.getMessagesList()) {
+                    latencies[delivered++] = now - m.getData().asReadOnlyByteBuffer().getLong();
+                }
+            }
+            long nanos = System.nanoTime() - start;
+
+            rw.close();
+            socket.close();
+            writer.join();
+
+            Arrays.sort(latencies);
+            return new long[]{
+                (long) (commits / (nanos / 1e9)),
+                latencies[commits / 2],
+                latencies[(int) (commits * 0.99)]
+            };
+        }
+    }
+
+    private static Thread writer(ServerSocket server, int rate, int commits, int nodeNumber) {
+        return new Thread(() -> {
+            try (java.net.Socket socket = server.accept()) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                write(out, init(nodeNumber));
+
+                long interval = rate == 0 ? 0 : 1000000000L / rate;
+                long next = System.nanoTime();
+                for (int i = 1; i <= commits; i++) {
+                    if (interval > 0) {
+                        next += interval;
+                        while (System.nanoTime() < next) {
+                            LockSupport.parkNanos(next - System.nanoTime());
+                        }
+                    }
+                    write(out, commit(i, nodeNumber));
+                    if (interval > 0 || i % UNPACED_FLUSH == 0) {
+                        out.flush();
+                    }
+                }
+                out.flush();
+
+                // keep the connection open until the reader is done
+                socket.getInputStream().read();
+            } catch (IOException e) {
+                // closed by the reader
+            }
+        });
+    }
+
+    private static void write(DataOutputStream out, Reply reply) throws IOException {
+        byte[] data = reply.toByteArray();
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static Reply init(int nodeNumber) {
+        Proto.Init.Builder init = Proto.Init.newBuilder();
+        for (int id = 0; id < nodeNumber; id++) {
+            init.putCommitted(id, Proto.ExceptionSet.newBuilder().setSeq(0).build());
+        }
+        return Reply.newBuilder().setInit(init).build();
+    }
+
+    private static Reply commit(long seq, int nodeNumber) {
+        // the send time goes in the data of the message
+        byte[] sent = ByteBuffer.allocate(8).putLong(System.nanoTime()).array();
+        Message message = Message.newBuilder()
+                .addHashes(Generator.BLACK)
+                .setData(ByteString.copyFrom(sent))
+                .build();
+
+        // every commit conflicts with the previous one
+        Proto.Commit.Builder commit = Proto.Commit.newBuilder()
+                .setDot(Proto.Dot.newBuilder().setId(0).setSeq(seq))
+                .setMessage(Batch.pack(Arrays.asList(message)));
+        for (int id = 0; id < nodeNumber; id++) {
+            commit.putConf(id, id == 0 ? seq : 0L);
+        }
+        return Reply.newBuilder().setCommit(commit).build();
+    }
+}
@@ -0,0 +1,166 @@
+package org.imdea.vcd.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.imdea.vcd.Generator;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.queue.ConfQueue;
+import org.imdea.vcd.queue.ConfQueueBox;
+import org.imdea.vcd.queue.clock.Clock;
+import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.queue.clock.ExceptionSet;
+import org.imdea.vcd.queue.clock.VClock;
+
+/**
+ * Compares ordering commits by their conf clocks with ordering them by
+ * their precise dep sets, when conflicts are rare.
+ *
+ * Each command has one of COLORS colors. Commands are committed in a global
+ * order, and each one also has in its conf some of the commands committed
+ * concurrently after it. The dep of a command has the same commands as its
+ * conf, minus the ones with other colors (in the last WINDOW seqs of each
+ * node). Commits are added to the queue out of order, each delayed by up to
+ * a few positions. The latency of a command is the number of commits added
+ * to the queue between its own and its delivery.
+ *
+ * Usage: PreciseDepsBench [COMMITS] [NODE_NUMBER] [COLORS] [DELAY]
+ *
+ * @author Vitor Enes
+ */
+public class PreciseDepsBench {
+
+    private static final int ROUNDS = 5;
+    private static final int CONCURRENCY = 4;
+    private static final int WINDOW = 100;
+
+    public static void main(String[] args) throws Exception {
+        int commits = Bench.intArg(args, 0, 200000);
+        int nodeNumber = Bench.intArg(args, 1, 5);
+        int colors = Bench.intArg(args, 2, 100);
+        int delay = Bench.intArg(args, 3, 16);
+
+        List<Commit> trace = trace(commits, nodeNumber, colors, delay);
+
+        System.out.println(String.format("%-10s %10s %10s %10s %12s",
+                "mode", "mean", "p50", "p99", "ns/add"));
+        for (int round = 0; round < ROUNDS; round++) {
+            for (boolean precise : new boolean[]{false, true}) {
+                run(precise, trace, nodeNumber);
+            }
+        }
+    }
+
+    private static void run(boolean precise, List<Commit> trace, int nodeNumber) throws Exception {
+        // with batching, the conflict relation is not transitive, and
+        // all the seqs in conf are visited
+        ConfQueue queue = new ConfQueue(nodeNumber, true, true);
+        Map<Dot, Integer> added = new HashMap<>();
+        int[] latencies = new int[trace.size()];
+        int delivered = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < trace.size(); i++) {
+            Commit commit = trace.get(i);
+            added.put(commit.dot, i);
+            queue.add(commit.dot, commit.message, commit.conf, precise ? commit.dep : null);
+            for (ConfQueueBox box : queue.getToDeliver()) {
+                for (Dot dot : box.getDots()) {
+                    latencies[delivered++] = i - added.remove(dot);
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        if (delivered != trace.size()) {
+            throw new IllegalStateException("Not all commits were delivered");
+        }
+        Arrays.sort(latencies);
+        long sum = 0;
+        for (int latency : latencies) {
+            sum += latency;
+        }
+        System.out.println(String.format("%-10s %10.2f %10d %10d %12.1f",
+                precise ? "dep" : "conf",
+                (double) sum / latencies.length,
+                latencies[latencies.length / 2],
+                latencies[latencies.length * 99 / 100],
+                (double) nanos / trace.size()));
+    }
+
+    private static List<Commit> trace(int commits, int nodeNumber, int colors, int delay) {
+        Random random = new Random(42);
+
+        // global order: dot i is the i-th command of node i % nodeNumber
+        Dot[] dots = new Dot[commits];
+        int[] color = new int[commits];
+        for (int i = 0; i < commits; i++) {
+            dots[i] = new Dot(i % nodeNumber, (long) (i / nodeNumber) + 1);
+            color[i] = random.nextInt(colors);
+        }
+
+        // highest seq of each node per color, in the commands before i
+        long[][] highest = new long[colors][nodeNumber];
+        Commit[] ordered = new Commit[commits];
+        for (int i = 0; i < commits; i++) {
+            int last = Math.min(commits - 1, i + random.nextInt(CONCURRENCY + 1));
+
+            // conf: the highest seq of each node with the same color,
+            // up to last
+            long[] seqs = highest[color[i]].clone();
+            for (int j = i; j <= last; j++) {
+                if (color[j] == color[i]) {
+                    seqs[dots[j].getId()] = dots[j].getSeq();
+                }
+            }
+            highest[color[i]][dots[i].getId()] = dots[i].getSeq();
+
+            // dep: the same, minus the seqs of other colors
+            HashMap<Integer, List<Long>> others = new HashMap<>();
+            for (int id = 0; id < nodeNumber; id++) {
+                others.put(id, new ArrayList<>());
+            }
+            for (int j = Math.max(0, last - WINDOW * nodeNumber + 1); j <= last; j++) {
+                int id = dots[j].getId();
+                if (color[j] != color[i] && j != i && dots[j].getSeq() < seqs[id]) {
+                    others.get(id).add(dots[j].getSeq());
+                }
+            }
+            HashMap<Integer, ExceptionSet> dep = new HashMap<>();
+            for (int id = 0; id < nodeNumber; id++) {
+                dep.put(id, new ExceptionSet(seqs[id], others.get(id)));
+            }
+
+            Message message = Generator.message("" + color[i]);
+            ordered[i] = new Commit(dots[i], message, new VClock(seqs), new Clock<>(dep));
+        }
+
+        // arrival order: each commit delayed by up to delay positions
+        List<Commit> trace = new ArrayList<>(Arrays.asList(ordered));
+        for (int i = commits - 1; i > 0; i--) {
+            int j = Math.max(0, i - random.nextInt(delay + 1));
+            Commit tmp = trace.get(i);
+            trace.set(i, trace.get(j));
+            trace.set(j, tmp);
+        }
+        return trace;
+    }
+
+    private static class Commit {
+
+        private final Dot dot;
+        private final Message message;
+        private final VClock conf;
+        private final Clock<ExceptionSet> dep;
+
+        Commit(Dot dot, Message message, VClock conf, Clock<ExceptionSet> dep) {
+            this.dot = dot;
+            this.message = message;
+            this.conf = conf;
+            this.dep = dep;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.imdea.vcd.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.imdea.vcd.Generator;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.queue.ConfQueue;
+import org.imdea.vcd.queue.ConfQueueBox;
+import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.queue.clock.VClock;
+
+/**
+ * Delivery latency of a read-dominated workload, with and without the pure
+ * flag set on the reads.
+ *
+ * All commands conflict (they have the same color). Commands are committed
+ * in a global order, but each one also has in its conf some of the commands
+ * committed concurrently after it, and commits are added to the queue out
+ * of order (each delayed by up to a few positions). The latency of a
+ * command is the number of commits added to the queue between its own and
+ * its delivery.
+ *
+ * Usage: PureBench [COMMITS] [NODE_NUMBER] [READ_PERCENTAGE] [DELAY]
+ *
+ * @author Vitor Enes
+ */
+public class PureBench {
+
+    private static final int ROUNDS = 5;
+    private static final int CONCURRENCY = 4;
+
+    public static void main(String[] args) throws Exception {
+        int commits = Bench.intArg(args, 0, 200000);
+        int nodeNumber = Bench.intArg(args, 1, 5);
+        int reads = Bench.intArg(args, 2, 90);
+        int delay = Bench.intArg(args, 3, 16);
+
+        List<Commit> trace = trace(commits, nodeNumber, reads, delay);
+
+        System.out.println(String.format("%-10s %10s %10s %10s %12s",
+                "mode", "mean", "p50", "p99", "ns/add"));
+        for (int round = 0; round < ROUNDS; round++) {
+            for (boolean pure : new boolean[]{false, true}) {
+                run(pure, trace, nodeNumber);
+            }
+        }
+    }
+
+    private static void run(boolean pure, List<Commit> trace, int nodeNumber) throws Exception {
+        ConfQueue queue = new ConfQueue(nodeNumber, false, true);
+        Map<Dot, Integer> added = new HashMap<>();
+        int[] latencies = new int[trace.size()];
+        int delivered = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < trace.size(); i++) {
+            Commit commit = trace.get(i);
+            added.put(commit.dot, i);
+            queue.add(commit.dot, pure ? commit.message : commit.impure, commit.conf);
+            for (ConfQueueBox box : queue.getToDeliver()) {
+                for (Dot dot : box.getDots()) {
+                    latencies[delivered++] = i - added.remove(dot);
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        if (delivered != trace.size()) {
+            throw new IllegalStateException("Not all commits were delivered");
+        }
+        Arrays.sort(latencies);
+        long sum = 0;
+        for (int latency : latencies) {
+            sum += latency;
+        }
+        System.out.println(String.format("%-10s %10.2f %10d %10d %12.1f",
+                pure ? "pure" : "impure",
+                (double) sum / latencies.length,
+                latencies[latencies.length / 2],
+                latencies[latencies.length * 99 / 100],
+                (double) nanos / trace.size()));
+    }
+
+    private static List<Commit> trace(int commits, int nodeNumber, int reads, int delay) {
+        Random random = new Random(42);
+
+        // global order: dot i is the i-th command of node i % nodeNumber
+        Dot[] dots = new Dot[commits];
+        for (int i = 0; i < commits; i++) {
+            dots[i] = new Dot(i % nodeNumber, (long) (i / nodeNumber) + 1);
+        }
+
+        // conf: all the commands before, and some of the ones after
+        Commit[] ordered = new Commit[commits];
+        for (int i = 0; i < commits; i++) {
+            int last = Math.min(commits - 1, i + random.nextInt(CONCURRENCY + 1));
+            long[] seqs = new long[nodeNumber];
+            for (int j = Math.max(0, last - nodeNumber + 1); j <= last; j++) {
+                seqs[dots[j].getId()] = dots[j].getSeq();
+            }
+            Message message = Generator.message("black").toBuilder()
+                    .setPure(random.nextInt(100) < reads)
+                    .build();
+            ordered[i] = new Commit(dots[i], message, new VClock(seqs));
+        }
+
+        // arrival order: each commit delayed by up to delay positions
+        List<Commit> trace = new ArrayList<>(Arrays.asList(ordered));
+        for (int i = commits - 1; i > 0; i--) {
+            int j = Math.max(0, i - random.nextInt(delay + 1));
+            Commit tmp = trace.get(i);
+            trace.set(i, trace.get(j));
+            trace.set(j, tmp);
+        }
+        return trace;
+    }
+
+    private static class Commit {
+
+        private final Dot dot;
+        private final Message message;
+        private final Message impure;
+        private final VClock conf;
+
+        Commit(Dot dot, Message message, VClock conf) {
+            this.dot = dot;
+            this.message = message;
+            this.impure = message.toBuilder().setPure(false).build();
+            this.conf = conf;
+        }
+    }
+}
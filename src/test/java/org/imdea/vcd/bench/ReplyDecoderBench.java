@@ -0,0 +1,73 @@
+package org.imdea.vcd.bench;
+
+import com.google.protobuf.ByteString;
+import org.imdea.vcd.DecodedReply;
+import org.imdea.vcd.Generator;
+import org.imdea.vcd.ReplyDecoder;
+import org.imdea.vcd.pb.Proto;
+import org.imdea.vcd.pb.Proto.Reply;
+import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.queue.clock.VClock;
+
+/**
+ * Compares decoding a commit with the generated parser (and then building
+ * the dot and the conf clock from it, as the parser thread used to) with
+ * decoding it with the ReplyDecoder.
+ *
+ * Usage: ReplyDecoderBench [COMMITS] [PAYLOAD_SIZE] [NODE_NUMBER]
+ *
+ * @author Vitor Enes
+ */
+public class ReplyDecoderBench {
+
+    private static final int ROUNDS = 5;
+
+    // keeps the results alive
+    private static long sink = 0;
+
+    public static void main(String[] args) throws Exception {
+        int commits = Bench.intArg(args, 0, 1000000);
+        int payloadSize = Bench.intArg(args, 1, 100);
+        int nodeNumber = Bench.intArg(args, 2, 5);
+
+        byte[] frame = frame(payloadSize, nodeNumber);
+        ReplyDecoder decoder = new ReplyDecoder();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytes = Bench.allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < commits; i++) {
+                Proto.Commit commit = Reply.parseFrom(frame).getCommit();
+                Dot dot = Dot.dot(commit.getDot());
+                VClock conf = VClock.vclock(commit.getConfMap());
+                sink += dot.getSeq() + conf.get(0) + commit.getMessage().getSerializedSize();
+            }
+            Bench.report("generated", commits, System.nanoTime() - start, Bench.allocatedBytes() - bytes);
+
+            bytes = Bench.allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < commits; i++) {
+                DecodedReply reply = decoder.decode(frame);
+                sink += reply.getDot().getSeq() + reply.getConf().get(0) + reply.getMessage().getSerializedSize();
+            }
+            Bench.report("decoder", commits, System.nanoTime() - start, Bench.allocatedBytes() - bytes);
+        }
+        if (sink == 0) {
+            System.out.println("unexpected result");
+        }
+    }
+
+    private static byte[] frame(int payloadSize, int nodeNumber) {
+        Proto.Message message = Proto.Message.newBuilder()
+                .addHashes(Generator.BLACK)
+                .setData(ByteString.copyFrom(new byte[payloadSize]))
+                .build();
+        Proto.Commit.Builder commit = Proto.Commit.newBuilder()
+                .setDot(Proto.Dot.newBuilder().setId(0).setSeq(1000000L))
+                .setMessage(message);
+        for (int id = 0; id < nodeNumber; id++) {
+            commit.putConf(id, 1000000L + id);
+        }
+        return Reply.newBuilder().setCommit(commit).build().toByteArray();
+    }
+}
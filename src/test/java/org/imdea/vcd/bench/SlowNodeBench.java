@@ -0,0 +1,70 @@
+package org.imdea.vcd.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.imdea.vcd.queue.Commit;
+import org.imdea.vcd.queue.CommitTrace;
+import org.imdea.vcd.queue.ConfQueue;
+import org.imdea.vcd.queue.ConfQueueBox;
+
+/**
+ * Throughput of a batching ConfQueue (where all the seqs in the conf of a
+ * vertex are visited) when one node is slow.
+ *
+ * The commits of the last node arrive LAG positions late (see
+ * CommitTrace.generate for the others). Meanwhile, the vertices that
+ * conflict with them wait, and the ones that don't are delivered, so the
+ * seqs still to be delivered of each node are a wide window with many
+ * delivered seqs in between.
+ *
+ * Usage: SlowNodeBench [COMMITS] [NODE_NUMBER] [COLORS] [LAG]
+ *
+ * @author Vitor Enes
+ */
+public class SlowNodeBench {
+
+    private static final int ROUNDS = 5;
+    private static final int CONCURRENCY = 4;
+
+    public static void main(String[] args) throws Exception {
+        int commits = Bench.intArg(args, 0, 100000);
+        int nodeNumber = Bench.intArg(args, 1, 3);
+        int colors = Bench.intArg(args, 2, 1000);
+        int lag = Bench.intArg(args, 3, 20000);
+
+        Random random = new Random(42);
+        CommitTrace generated = CommitTrace.generate(commits, nodeNumber, colors, CONCURRENCY, random);
+        List<Commit> slow = new ArrayList<>();
+        List<Commit> lagged = new ArrayList<>();
+        int slowNode = nodeNumber - 1;
+        int i = 0;
+        for (Commit commit : generated.getCommits()) {
+            if (commit.getDot().getId() == slowNode) {
+                slow.add(commit);
+            } else {
+                lagged.add(commit);
+            }
+            // release the slow commits lag positions later
+            if (++i > lag && !slow.isEmpty()) {
+                lagged.add(slow.remove(0));
+            }
+        }
+        lagged.addAll(slow);
+        CommitTrace trace = new CommitTrace(generated.getCommitted(), lagged);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            ConfQueue queue = new ConfQueue(true, true);
+            long bytes = Bench.allocatedBytes();
+            long start = System.nanoTime();
+            List<ConfQueueBox> result = trace.replay(queue);
+            long nanos = System.nanoTime() - start;
+            bytes = Bench.allocatedBytes() - bytes;
+
+            if (queue.elements() != 0 || result.isEmpty()) {
+                throw new IllegalStateException("Not all commits were delivered");
+            }
+            Bench.report("slow-node-" + lag, trace.getCommits().size(), nanos, bytes);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.imdea.vcd.queue;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Vitor Enes
+ */
+public class ColorTableTest {
+
+    @Test
+    public void testIntern() {
+        ColorTable table = new ColorTable();
+        int[] abc = table.intern(colors("c", "a", "b", "a"));
+        assertEquals(3, table.size());
+        assertEquals(3, abc.length);
+        for (int i = 1; i < abc.length; i++) {
+            assertTrue(abc[i - 1] < abc[i]);
+        }
+
+        // same colors, same ids
+        assertArrayEquals(abc, table.intern(colors("b", "c", "a")));
+        assertArrayEquals(new int[0], table.intern(Collections.emptyList()));
+        assertEquals(3, table.size());
+
+        table.clear();
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testRelease() {
+        ColorTable table = new ColorTable();
+        long empty = table.footprint();
+        int[] ab = table.intern(colors("a", "b"));
+        int[] bc = table.intern(colors("b", "c"));
+        assertEquals(3, table.size());
+
+        // b is still used by bc
+        table.release(ab);
+        assertEquals(2, table.size());
+        assertArrayEquals(bc, table.intern(colors("c", "b")));
+        table.release(bc);
+        table.release(bc);
+        assertEquals(0, table.size());
+
+        // ids are reused, and the table shrinks back
+        List<int[]> interned = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            interned.add(table.intern(colors("key-" + i)));
+        }
+        assertEquals(10000, table.size());
+        assertTrue(table.footprint() > empty);
+        for (int[] ids : interned) {
+            table.release(ids);
+        }
+        assertEquals(0, table.size());
+        for (int i = 0; i < 10000; i++) {
+            int[] ids = table.intern(colors("other-" + i));
+            assertTrue(ids[0] < 10000);
+            table.release(ids);
+        }
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(1);
+        ColorTable table = new ColorTable();
+        Map<String, Integer> ids = new HashMap<>();
+        Map<String, Integer> refs = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            String color = "" + random.nextInt(1000);
+            if (random.nextBoolean() || !refs.containsKey(color)) {
+                int id = table.intern(colors(color))[0];
+                Integer previous = ids.put(color, id);
+                assertTrue(previous == null || previous == id);
+                refs.merge(color, 1, Integer::sum);
+            } else {
+                table.release(new int[]{ids.get(color)});
+                if (refs.merge(color, -1, Integer::sum) == 0) {
+                    refs.remove(color);
+                    ids.remove(color);
+                }
+            }
+            assertEquals(refs.size(), table.size());
+        }
+    }
+
+    @Test
+    public void testIntersect() {
+        ColorTable table = new ColorTable();
+        int[] ab = table.intern(colors("a", "b"));
+        int[] bc = table.intern(colors("b", "c"));
+        int[] cd = table.intern(colors("c", "d"));
+        int[] e = table.intern(colors("e"));
+
+        assertTrue(ColorTable.intersect(ab, bc));
+        assertTrue(ColorTable.intersect(cd, bc));
+        assertFalse(ColorTable.intersect(ab, cd));
+        assertFalse(ColorTable.intersect(e, ab));
+        assertFalse(ColorTable.intersect(e, new int[0]));
+    }
+
+    private static List<ByteString> colors(String... colors) {
+        ByteString[] result = new ByteString[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            result[i] = ByteString.copyFromUtf8(colors[i]);
+        }
+        return Arrays.asList(result);
+    }
+}
@@ -0,0 +1,183 @@
+package org.imdea.vcd.queue;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.imdea.vcd.Generator;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.queue.clock.Clock;
+import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.queue.clock.ExceptionSet;
+import org.imdea.vcd.queue.clock.VClock;
+import org.imdea.vcd.util.Trace;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The commits received by a client, to be replayed against a delivery
+ * engine: either generated or read from a file recorded by the parser (see
+ * RECORD_TRACE in DataRW).
+ *
+ * @author Vitor Enes
+ */
+public class CommitTrace {
+
+    private final Clock<ExceptionSet> committed;
+    private final List<Commit> commits;
+
+    public CommitTrace(Clock<ExceptionSet> committed, List<Commit> commits) {
+        this.committed = committed;
+        this.commits = commits;
+    }
+
+    public Clock<ExceptionSet> getCommitted() {
+        return committed;
+    }
+
+    public List<Commit> getCommits() {
+        return commits;
+    }
+
+    /**
+     * Commands are committed in a global order, where the i-th command is
+     * from node i % nodeNumber and has one of the given number of colors.
+     * The conf of each command has, for each node, the highest seq with the
+     * same color among the commands before it, and among up to concurrency
+     * commands after it from other nodes.
+     */
+    public static CommitTrace generate(int commits, int nodeNumber, int colors, int concurrency, Random random) {
+        Dot[] dots = new Dot[commits];
+        int[] color = new int[commits];
+        for (int i = 0; i < commits; i++) {
+            dots[i] = new Dot(i % nodeNumber, (long) (i / nodeNumber) + 1);
+            color[i] = random.nextInt(colors);
+        }
+
+        // highest seq of each node per color, in the commands before i
+        long[][] highest = new long[colors][nodeNumber];
+        List<Commit> result = new ArrayList<>();
+        for (int i = 0; i < commits; i++) {
+            int last = Math.min(commits - 1, i + random.nextInt(concurrency + 1));
+            long[] seqs = highest[color[i]].clone();
+            for (int j = i; j <= last; j++) {
+                if (dots[j].getId() != dots[i].getId() && color[j] == color[i]) {
+                    seqs[dots[j].getId()] = dots[j].getSeq();
+                }
+            }
+            highest[color[i]][dots[i].getId()] = dots[i].getSeq();
+
+            Message message = Generator.message("" + color[i]);
+            result.add(new Commit(dots[i], message, new VClock(seqs)));
+        }
+        return new CommitTrace(Clock.eclock(nodeNumber), result);
+    }
+
+    /**
+     * Reads a recorded trace. Traces don't have the messages, so all
+     * commands have the same color.
+     */
+    public static CommitTrace read(String file) throws IOException {
+        Clock<ExceptionSet> committed = null;
+        List<Commit> commits = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            for (String line; (line = br.readLine()) != null;) {
+                Trace trace = Trace.decode(line);
+                switch (trace.getType()) {
+                    case COMMITTED:
+                        committed = trace.getCommitted();
+                        break;
+                    case COMMIT:
+                        commits.add(new Commit(trace.getDot(), Generator.message("black"), trace.getConf()));
+                        break;
+                }
+            }
+        }
+        return new CommitTrace(committed, commits);
+    }
+
+    /**
+     * The same commits, in a random order.
+     */
+    public CommitTrace shuffle(Random random) {
+        List<Commit> shuffled = new ArrayList<>(this.commits);
+        Collections.shuffle(shuffled, random);
+        return new CommitTrace(this.committed, shuffled);
+    }
+
+    /**
+     * The same commits, each delayed by up to delay positions.
+     */
+    public CommitTrace delay(int delay, Random random) {
+        List<Commit> delayed = new ArrayList<>(this.commits);
+        for (int i = delayed.size() - 1; i > 0; i--) {
+            int j = Math.max(0, i - random.nextInt(delay + 1));
+            Collections.swap(delayed, i, j);
+        }
+        return new CommitTrace(this.committed, delayed);
+    }
+
+    /**
+     * Inits the engine, adds all commits, and returns the boxes drained
+     * after each add, in order.
+     */
+    public List<ConfQueueBox> replay(DeliveryEngine engine) throws InvalidProtocolBufferException {
+        List<ConfQueueBox> result = new ArrayList<>();
+        engine.init(this.committed);
+        for (Commit commit : this.commits) {
+            engine.add(commit.getDot(), commit.getMessage(), commit.getConf());
+            result.addAll(engine.drainDeliverable());
+        }
+        return result;
+    }
+
+    /**
+     * Inits the engine, adds the commits with addAll, batch commits at a
+     * time, and returns the boxes returned, in order.
+     */
+    public List<ConfQueueBox> replayAll(DeliveryEngine engine, int batch) throws InvalidProtocolBufferException {
+        List<ConfQueueBox> result = new ArrayList<>();
+        engine.init(this.committed);
+        for (int from = 0; from < this.commits.size(); from += batch) {
+            int to = Math.min(from + batch, this.commits.size());
+            result.addAll(engine.addAll(this.commits.subList(from, to)));
+        }
+        return result;
+    }
+
+    /**
+     * Index of the box in which each dot was delivered (at most once).
+     */
+    public static Map<Dot, Integer> positions(List<ConfQueueBox> result) {
+        Map<Dot, Integer> position = new HashMap<>();
+        for (int i = 0; i < result.size(); i++) {
+            for (Dot dot : result.get(i).getDots()) {
+                assertNull(position.put(dot, i));
+            }
+        }
+        return position;
+    }
+
+    /**
+     * The dots of each color (the first hash of their message), in the
+     * order they were delivered.
+     */
+    public Map<String, List<Dot>> perColor(List<ConfQueueBox> result) {
+        Map<Dot, String> colors = new HashMap<>();
+        for (Commit commit : this.commits) {
+            colors.put(commit.getDot(), commit.getMessage().getHashes(0).toStringUtf8());
+        }
+        Map<String, List<Dot>> perColor = new HashMap<>();
+        for (ConfQueueBox box : result) {
+            for (Dot dot : box.getDots()) {
+                perColor.computeIfAbsent(colors.get(dot), c -> new ArrayList<>()).add(dot);
+            }
+        }
+        return perColor;
+    }
+}
@@ -0,0 +1,103 @@
+package org.imdea.vcd.queue;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.imdea.vcd.Generator;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.util.Batch;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Vitor Enes
+ */
+public class ConfQueueBoxTest {
+
+    @Test
+    public void testSingleton() {
+        Dot dot = new Dot(1, 2L);
+        Message message = Generator.message("red");
+        ConfQueueBox box = new ConfQueueBox(dot, message);
+        assertEquals(1, box.size());
+        assertEquals(Collections.singletonList(dot), box.getDots());
+        assertEquals(Collections.singletonList(message), box.sortMessages());
+
+        // merging a single box returns it
+        assertSame(box, ConfQueueBox.merge(new ConfQueueBox[]{box}));
+    }
+
+    @Test
+    public void testMerge() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            // random boxes, some of them already merged
+            int boxCount = 1 + random.nextInt(20);
+            List<Dot> all = new ArrayList<>();
+            Map<Dot, Message> messages = new HashMap<>();
+            ConfQueueBox[] boxes = new ConfQueueBox[boxCount];
+            for (int b = 0; b < boxCount; b++) {
+                int size = 1 + random.nextInt(3);
+                ConfQueueBox[] members = new ConfQueueBox[size];
+                for (int m = 0; m < size; m++) {
+                    Dot dot = new Dot(random.nextInt(5), (long) all.size() + 1);
+                    Message message = Generator.message();
+                    all.add(dot);
+                    messages.put(dot, message);
+                    members[m] = new ConfQueueBox(dot, message);
+                }
+                boxes[b] = ConfQueueBox.merge(members);
+            }
+
+            ConfQueueBox merged = ConfQueueBox.merge(boxes);
+            Collections.sort(all);
+            assertEquals(all.size(), merged.size());
+            assertEquals(all, merged.getDots());
+
+            // messages in the order of the dots
+            List<Message> sorted = merged.sortMessages();
+            for (int d = 0; d < all.size(); d++) {
+                assertSame(messages.get(all.get(d)), sorted.get(d));
+            }
+        }
+    }
+
+    @Test
+    public void testUnpack() throws InvalidProtocolBufferException {
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            // batches of two, some of them unpacked on commit
+            int boxCount = 1 + random.nextInt(20);
+            List<Dot> all = new ArrayList<>();
+            Map<Dot, List<Message>> batches = new HashMap<>();
+            ConfQueueBox[] boxes = new ConfQueueBox[boxCount];
+            for (int b = 0; b < boxCount; b++) {
+                Dot dot = new Dot(random.nextInt(5), (long) all.size() + 1);
+                List<Message> batch = Arrays.asList(Generator.message(), Generator.message());
+                all.add(dot);
+                batches.put(dot, batch);
+                boxes[b] = new ConfQueueBox(dot, Batch.pack(batch), random.nextBoolean() ? batch : null);
+            }
+
+            ConfQueueBox merged = ConfQueueBox.merge(boxes);
+            Collections.sort(all);
+            List<Message> expected = new ArrayList<>();
+            for (Dot dot : all) {
+                expected.addAll(batches.get(dot));
+            }
+            assertEquals(expected, merged.unpack());
+        }
+
+        // batches unpacked on commit are reused
+        List<Message> batch = Arrays.asList(Generator.message(), Generator.message());
+        ConfQueueBox box = new ConfQueueBox(new Dot(1, 1L), Batch.pack(batch), batch);
+        assertSame(batch, box.unpack());
+    }
+}
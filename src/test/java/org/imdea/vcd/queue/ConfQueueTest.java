@@ -7,6 +7,7 @@ import org.imdea.vcd.pb.Proto.Message;
 import org.imdea.vcd.queue.clock.Clock;
 import org.imdea.vcd.queue.clock.Dot;
 import org.imdea.vcd.queue.clock.MaxInt;
+import org.imdea.vcd.queue.clock.VClock;
 import org.junit.Test;
 
 import java.util.ArrayList;
@@ -80,6 +81,27 @@ public class ConfQueueTest {
         assertTrue(list.get(0).size() == 2);
     }
 
+    @Test
+    public void testFastPath() throws InvalidProtocolBufferException {
+        java.util.Random random = new java.util.Random(1);
+        for (boolean batching : new boolean[]{false, true}) {
+            // in order, and without concurrent commands, the dependencies
+            // of each command are always delivered
+            CommitTrace trace = CommitTrace.generate(100, 3, 2, 0, random);
+            ConfQueue queue = new ConfQueue(batching, true);
+            assertEquals(100, trace.replay(queue).size());
+            assertEquals(1.0, queue.fastPathRate(), 0);
+
+            // two concurrent commands depend on each other
+            ConfQueue pair = new ConfQueue(2, batching, true);
+            pair.add(new Dot(0, 1L), Generator.message("red"), vclock(0L, 1L));
+            assertTrue(pair.getToDeliver().isEmpty());
+            pair.add(new Dot(1, 1L), Generator.message("red"), vclock(1L, 0L));
+            assertEquals(1, pair.getToDeliver().size());
+            assertEquals(0.0, pair.fastPathRate(), 0);
+        }
+    }
+
     @Test
     public void testRandom() throws InvalidProtocolBufferException {
         for (int i = 0; i < ITERATIONS; i++) {
@@ -355,6 +377,230 @@ public class ConfQueueTest {
         checkTerminationRandomShuffles(nodeNumber, argsList);
     }
 
+    @Test
+    public void testWaiting() throws InvalidProtocolBufferException {
+        Integer nodeNumber = 2;
+        Long last = 50L;
+
+        // each dot depends on the previous one,
+        // and they're added in reverse order
+        List<QueueAddArgs> argsList = new ArrayList<>();
+        for (Long seq = last; seq > 0; seq--) {
+            argsList.add(args(new Dot(0, seq), vclock(seq - 1, 0L)));
+        }
+
+        for (boolean batching : new boolean[]{false, true}) {
+            for (boolean optDelivery : new boolean[]{false, true}) {
+                ConfQueue queue = new ConfQueue(nodeNumber, batching, optDelivery);
+
+                // nothing is delivered until the first dot is added
+                for (int i = 0; i < argsList.size() - 1; i++) {
+                    QueueAddArgs args = argsList.get(i);
+                    queue.add(args.getDot(), args.getMessage(), args.getConf());
+                    assertTrue(queue.getToDeliver().isEmpty());
+                }
+
+                QueueAddArgs first = argsList.get(argsList.size() - 1);
+                queue.add(first.getDot(), first.getMessage(), first.getConf());
+                List<ConfQueueBox> result = queue.getToDeliver();
+                assertTrue(queue.isEmpty());
+                assertEquals(last.intValue(), result.size());
+                for (int i = 0; i < result.size(); i++) {
+                    assertTrue(result.get(i).getDots().contains(new Dot(0, i + 1L)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLongCycle() throws InvalidProtocolBufferException {
+        Integer nodeNumber = 2;
+        Long last = 100000L;
+        ConfQueue queue = new ConfQueue(nodeNumber, false, true);
+
+        // each dot depends on the previous one, and the first on the last:
+        // the search once the first is added visits all of them
+        for (Long seq = 2L; seq <= last; seq++) {
+            queue.add(new Dot(0, seq), Generator.message("black"), vclock(seq - 1, 0L));
+        }
+        assertTrue(queue.getToDeliver().isEmpty());
+
+        queue.add(new Dot(0, 1L), Generator.message("black"), vclock(last, 0L));
+        List<ConfQueueBox> result = queue.getToDeliver();
+        assertTrue(queue.isEmpty());
+        assertEquals(1, result.size());
+        assertEquals(last.intValue(), result.get(0).size());
+    }
+
+    @Test
+    public void testPure() throws InvalidProtocolBufferException {
+        Integer nodeNumber = 2;
+        Dot r1 = new Dot(0, 1L);
+        Dot r2 = new Dot(1, 1L);
+        Dot w = new Dot(1, 2L);
+
+        for (boolean batching : new boolean[]{false, true}) {
+            ConfQueue queue = new ConfQueue(nodeNumber, batching, true);
+
+            // r1 waits for the write
+            queue.add(r1, pure(Generator.message("black")), vclock(1L, 2L));
+            assertTrue(queue.getToDeliver().isEmpty());
+
+            // r2 depends on r1, but they're both pure
+            queue.add(r2, pure(Generator.message("black")), vclock(1L, 1L));
+            List<ConfQueueBox> result = queue.getToDeliver();
+            assertEquals(1, result.size());
+            assertTrue(result.get(0).getDots().contains(r2));
+
+            // the write depends on r1, and r1 on it
+            queue.add(w, Generator.message("black"), vclock(1L, 2L));
+            result = queue.getToDeliver();
+            assertTrue(queue.isEmpty());
+            assertEquals(1, result.size());
+            assertTrue(result.get(0).getDots().contains(r1));
+            assertTrue(result.get(0).getDots().contains(w));
+        }
+
+        // unless pure, r2 waits for r1
+        ConfQueue queue = new ConfQueue(nodeNumber, false, true);
+        queue.add(r1, Generator.message("black"), vclock(1L, 2L));
+        queue.add(r2, Generator.message("black"), vclock(1L, 1L));
+        assertTrue(queue.getToDeliver().isEmpty());
+    }
+
+    @Test
+    public void testTransitiveRestored() throws InvalidProtocolBufferException {
+        Integer nodeNumber = 2;
+        ConfQueue queue = new ConfQueue(nodeNumber, false, true);
+        assertTrue(queue.transitive());
+
+        // a pure message delivered right away
+        queue.add(new Dot(0, 1L), pure(Generator.message("black")), vclock(0L, 0L));
+        assertEquals(1, queue.getToDeliver().size());
+        assertTrue(queue.transitive());
+
+        // a queued pure message: not transitive until it's delivered
+        queue.add(new Dot(0, 3L), pure(Generator.message("black")), vclock(2L, 0L));
+        assertTrue(queue.getToDeliver().isEmpty());
+        assertFalse(queue.transitive());
+        queue.add(new Dot(0, 2L), Generator.message("black"), vclock(1L, 0L));
+        assertEquals(2, queue.getToDeliver().size());
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.transitive());
+
+        // with batching, never transitive
+        queue = new ConfQueue(nodeNumber, true, true);
+        queue.add(new Dot(0, 1L), pure(Generator.message("black")), vclock(0L, 0L));
+        assertFalse(queue.transitive());
+    }
+
+    @Test
+    public void testPureOrder() throws InvalidProtocolBufferException {
+        java.util.Random random = new java.util.Random(1);
+        for (int i = 0; i < 50; i++) {
+            // reads and writes, in runs of each, so that the queue goes
+            // in and out of the transitive mode
+            CommitTrace trace = CommitTrace.generate(300, 3, 2, 4, random);
+            List<Commit> commits = new ArrayList<>();
+            boolean pure = false;
+            for (Commit c : trace.getCommits()) {
+                if (random.nextInt(20) == 0) {
+                    pure = !pure;
+                }
+                Message message = c.getMessage().toBuilder().setPure(pure).build();
+                commits.add(new Commit(c.getDot(), message, c.getConf()));
+            }
+            trace = new CommitTrace(trace.getCommitted(), commits).delay(10, random);
+
+            Map<Dot, Integer> position = CommitTrace.positions(trace.replay(new ConfQueue(false, true)));
+            assertEquals(commits.size(), position.size());
+
+            // a dependency that conflicts is never delivered after
+            for (Commit x : commits) {
+                for (Commit y : commits) {
+                    boolean conflict = x.getMessage().getHashes(0).equals(y.getMessage().getHashes(0))
+                            && !(x.getMessage().getPure() && y.getMessage().getPure());
+                    boolean dep = y.getDot().getSeq() <= x.getConf().get(y.getDot().getId());
+                    if (x != y && conflict && dep) {
+                        assertTrue(position.get(y.getDot()) <= position.get(x.getDot()));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRandomPure() throws InvalidProtocolBufferException {
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            Integer nodeNumber = 3;
+            Map<Dot, Clock<MaxInt>> dotToConf = Generator.dotToConf(nodeNumber);
+
+            List<QueueAddArgs> argsList = new ArrayList<>();
+            for (Map.Entry<Dot, Clock<MaxInt>> e : dotToConf.entrySet()) {
+                argsList.add(args(e.getKey(), e.getValue(), Math.random() < 0.8));
+            }
+
+            for (boolean batching : new boolean[]{false, true}) {
+                Collections.shuffle(argsList);
+                checkTermination(new ConfQueue(nodeNumber, batching, true), argsList);
+            }
+        }
+    }
+
+    @Test
+    public void testPreciseDeps() throws InvalidProtocolBufferException {
+        Integer nodeNumber = 2;
+        Long last = 1000L;
+
+        // only the last dot of node 0 conflicts with the dot of node 1
+        Dot dot = new Dot(1, 1L);
+        VClock conf = new VClock(last, 1L);
+        Clock<ExceptionSet> dep = new Clock<>(nodeNumber, new ExceptionSet());
+        dep.get(0).add(last);
+        dep.get(1).add(1L);
+
+        for (boolean batching : new boolean[]{false, true}) {
+            for (boolean optDelivery : new boolean[]{false, true}) {
+                ConfQueue queue = new ConfQueue(nodeNumber, batching, optDelivery);
+                queue.add(new Dot(0, last), Generator.message("black"), new VClock(last, 1L), dep);
+                assertTrue(queue.getToDeliver().isEmpty());
+
+                // the dots before are never visited
+                queue.add(dot, Generator.message("black"), conf, dep);
+                List<ConfQueueBox> result = queue.getToDeliver();
+                assertTrue(queue.isEmpty());
+                assertEquals(1, result.size());
+                assertEquals(2, result.get(0).size());
+            }
+        }
+
+        // without them, the dot waits for all of them
+        ConfQueue queue = new ConfQueue(nodeNumber, true, true);
+        queue.add(new Dot(0, last), Generator.message("black"), new VClock(last, 1L));
+        queue.add(dot, Generator.message("black"), conf);
+        assertTrue(queue.getToDeliver().isEmpty());
+    }
+
+    @Test
+    public void testRandomModes() throws InvalidProtocolBufferException {
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            Integer nodeNumber = 3;
+            Map<Dot, Clock<MaxInt>> dotToConf = Generator.dotToConf(nodeNumber);
+
+            List<QueueAddArgs> argsList = new ArrayList<>();
+            for (Map.Entry<Dot, Clock<MaxInt>> e : dotToConf.entrySet()) {
+                argsList.add(args(e.getKey(), e.getValue()));
+            }
+
+            for (boolean batching : new boolean[]{false, true}) {
+                for (boolean optDelivery : new boolean[]{false, true}) {
+                    Collections.shuffle(argsList);
+                    checkTermination(new ConfQueue(nodeNumber, batching, optDelivery), argsList);
+                }
+            }
+        }
+    }
+
     @Ignore
     @Test
     public void testFailure1() throws InvalidProtocolBufferException {
@@ -455,11 +701,19 @@ public class ConfQueueTest {
     }
 
     private QueueAddArgs args(Dot dot, Clock<MaxInt> conf) {
+        return args(dot, conf, false);
+    }
+
+    private QueueAddArgs args(Dot dot, Clock<MaxInt> conf, boolean pure) {
         conf.removeDot(dot);
-        QueueAddArgs args = new QueueAddArgs(dot, conf);
+        QueueAddArgs args = new QueueAddArgs(dot, conf, pure);
         return args;
     }
 
+    private Message pure(Message message) {
+        return message.toBuilder().setPure(true).build();
+    }
+
     private void checkTotalOrderPerColor(Map<Dots, List<Message>> ma, Map<Dots, List<Message>> mb) {
         for (Map.Entry<Dots, List<Message>> entry : ma.entrySet()) {
             List<Message> a = entry.getValue();
@@ -515,9 +769,9 @@ public class ConfQueueTest {
         private final Message message;
         private final Clock<MaxInt> conf;
 
-        public QueueAddArgs(Dot dot, Clock<MaxInt> conf) {
+        public QueueAddArgs(Dot dot, Clock<MaxInt> conf, boolean pure) {
             this.dot = dot;
-            this.message = Generator.message("black");
+            this.message = Generator.message("black").toBuilder().setPure(pure).build();
             this.conf = conf;
         }
 
@@ -526,7 +780,7 @@ public class ConfQueueTest {
             this.message = Message.newBuilder()
                     .addAllHashes(o.message.getHashesList())
                     .setData(o.message.getData())
-                    .setPure(false)
+                    .setPure(o.message.getPure())
                     .build();
             this.conf = new Clock(o.conf);
         }
@@ -0,0 +1,155 @@
+package org.imdea.vcd.queue;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+import org.imdea.vcd.Config;
+import org.imdea.vcd.queue.clock.Clock;
+import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.queue.clock.ExceptionSet;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import static org.junit.Assert.*;
+
+/**
+ * Conformance tests run against every delivery engine.
+ *
+ * @author Vitor Enes
+ */
+@RunWith(Parameterized.class)
+public class DeliveryEngineTest {
+
+    private static final int ITERATIONS = 20;
+    private static final int COMMITS = 500;
+    private static final int NODE_NUMBER = 3;
+    private static final int CONCURRENCY = 4;
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(new Object[][]{
+            {"conf", (Supplier<DeliveryEngine>) () -> new ConfQueue(false, true)},
+            {"conf-batching", (Supplier<DeliveryEngine>) () -> new ConfQueue(true, true)},
+            {"conf-no-opt", (Supplier<DeliveryEngine>) () -> new ConfQueue(false, false)},
+            {"partitioned", (Supplier<DeliveryEngine>) () -> new PartitionedQueue(2, false, true)},
+            {"partitioned-batching", (Supplier<DeliveryEngine>) () -> new PartitionedQueue(3, true, true)},
+            {"partitioned-no-opt", (Supplier<DeliveryEngine>) () -> new PartitionedQueue(2, false, false)}
+        });
+    }
+
+    private final Supplier<DeliveryEngine> engine;
+
+    public DeliveryEngineTest(String name, Supplier<DeliveryEngine> engine) {
+        this.engine = engine;
+    }
+
+    @Test
+    public void testCreate() {
+        Config config = Config.parseArgs(new String[]{"-delivery_engine", "conf"});
+        assertTrue(DeliveryEngine.create(config) instanceof ConfQueue);
+        config = Config.parseArgs(new String[]{"-delivery_engine", "partitioned"});
+        assertTrue(DeliveryEngine.create(config) instanceof PartitionedQueue);
+    }
+
+    @Test
+    public void testAllDelivered() throws InvalidProtocolBufferException {
+        Random random = new Random(1);
+        for (int i = 0; i < ITERATIONS; i++) {
+            CommitTrace trace = CommitTrace.generate(COMMITS, NODE_NUMBER, 1 + random.nextInt(5), CONCURRENCY, random)
+                    .shuffle(random);
+            DeliveryEngine e = this.engine.get();
+            checkAllDelivered(trace, trace.replay(e));
+            assertEquals(0, e.elements());
+            assertEquals(0, e.colors());
+        }
+    }
+
+    @Test
+    public void testDependencies() throws InvalidProtocolBufferException {
+        Random random = new Random(2);
+        for (int i = 0; i < ITERATIONS; i++) {
+            CommitTrace trace = CommitTrace.generate(COMMITS, NODE_NUMBER, 1 + random.nextInt(5), CONCURRENCY, random)
+                    .shuffle(random);
+            Map<Dot, Integer> position = CommitTrace.positions(trace.replay(this.engine.get()));
+
+            // the highest conflicting dot of each node in conf is
+            // delivered before (or with) the dot
+            for (Commit commit : trace.getCommits()) {
+                for (int id = 0; id < NODE_NUMBER; id++) {
+                    long seq = commit.getConf().get(id);
+                    if (seq > 0) {
+                        Dot dep = new Dot(id, seq);
+                        assertTrue(position.get(dep) <= position.get(commit.getDot()));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSameOrder() throws InvalidProtocolBufferException {
+        Random random = new Random(3);
+        for (int i = 0; i < ITERATIONS; i++) {
+            CommitTrace trace = CommitTrace.generate(COMMITS, NODE_NUMBER, 1 + random.nextInt(5), CONCURRENCY, random);
+            Map<String, List<Dot>> expected = trace.perColor(trace.replay(this.engine.get()));
+
+            // the order per color doesn't depend on the order of the adds
+            for (int j = 0; j < 3; j++) {
+                CommitTrace shuffled = trace.shuffle(random);
+                assertEquals(expected, shuffled.perColor(shuffled.replay(this.engine.get())));
+            }
+        }
+    }
+
+    @Test
+    public void testAddAll() throws InvalidProtocolBufferException {
+        Random random = new Random(5);
+        for (int i = 0; i < ITERATIONS; i++) {
+            CommitTrace trace = CommitTrace.generate(COMMITS, NODE_NUMBER, 1 + random.nextInt(5), CONCURRENCY, random);
+            Map<String, List<Dot>> expected = trace.perColor(trace.replay(this.engine.get()));
+
+            // the same order as adding one by one
+            CommitTrace shuffled = trace.shuffle(random);
+            DeliveryEngine e = this.engine.get();
+            List<ConfQueueBox> result = shuffled.replayAll(e, 1 + random.nextInt(100));
+            checkAllDelivered(shuffled, result);
+            assertEquals(0, e.elements());
+            assertEquals(expected, shuffled.perColor(result));
+        }
+    }
+
+    @Test
+    public void testCommitted() throws InvalidProtocolBufferException {
+        Random random = new Random(4);
+        CommitTrace trace = CommitTrace.generate(COMMITS, NODE_NUMBER, 3, CONCURRENCY, random);
+
+        // the first half was committed before the connection
+        List<Commit> first = trace.getCommits().subList(0, COMMITS / 2);
+        List<Commit> second = trace.getCommits().subList(COMMITS / 2, COMMITS);
+        Clock<ExceptionSet> committed = Clock.eclock(NODE_NUMBER);
+        for (Commit commit : first) {
+            committed.addDot(commit.getDot());
+        }
+        CommitTrace rest = new CommitTrace(committed, new ArrayList<>(second)).shuffle(random);
+
+        // and the engine can be reused
+        DeliveryEngine e = this.engine.get();
+        trace.replay(e);
+        checkAllDelivered(rest, rest.replay(e));
+        assertEquals(0, e.elements());
+    }
+
+    private static void checkAllDelivered(CommitTrace trace, List<ConfQueueBox> result) {
+        Map<Dot, Integer> position = CommitTrace.positions(result);
+        assertEquals(trace.getCommits().size(), position.size());
+        for (Commit commit : trace.getCommits()) {
+            assertTrue(position.containsKey(commit.getDot()));
+        }
+    }
+}
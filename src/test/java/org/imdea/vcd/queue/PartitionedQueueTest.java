@@ -0,0 +1,182 @@
+package org.imdea.vcd.queue;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.imdea.vcd.Generator;
+import org.imdea.vcd.pb.Proto.Message;
+import org.imdea.vcd.queue.clock.Clock;
+import org.imdea.vcd.queue.clock.Dot;
+import org.imdea.vcd.queue.clock.VClock;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Vitor Enes
+ */
+public class PartitionedQueueTest {
+
+    @Test
+    public void testMultiColor() throws InvalidProtocolBufferException {
+        PartitionedQueue queue = new PartitionedQueue(2, false, true);
+        Message a = Generator.message("a");
+        Message b = Generator.message("b");
+        Message ab = a.toBuilder().addAllHashes(b.getHashesList()).build();
+        assertNotEquals(queue.partition(a), queue.partition(b));
+        assertEquals(-1, queue.partition(ab));
+
+        Commit c1 = new Commit(new Dot(0, 1L), a, new VClock(new long[]{0L, 0L}));
+        Commit c2 = new Commit(new Dot(1, 1L), b, new VClock(new long[]{0L, 0L}));
+        Commit c3 = new Commit(new Dot(0, 2L), ab, new VClock(new long[]{1L, 1L}));
+        Commit c4 = new Commit(new Dot(1, 2L), b, new VClock(new long[]{2L, 1L}));
+        Commit c5 = new Commit(new Dot(0, 3L), a, new VClock(new long[]{2L, 0L}));
+        List<Commit> commits = Arrays.asList(c1, c2, c3, c4, c5);
+
+        for (List<Commit> permutation : Permutations.of(commits)) {
+            CommitTrace trace = new CommitTrace(Clock.eclock(2), permutation);
+            Map<Dot, Integer> position = CommitTrace.positions(trace.replay(queue));
+            assertEquals(commits.size(), position.size());
+            assertEquals(0, queue.elements());
+
+            // the multi-color message is ordered with both colors
+            assertTrue(position.get(c1.getDot()) < position.get(c3.getDot()));
+            assertTrue(position.get(c2.getDot()) < position.get(c3.getDot()));
+            assertTrue(position.get(c3.getDot()) < position.get(c4.getDot()));
+            assertTrue(position.get(c3.getDot()) < position.get(c5.getDot()));
+        }
+        queue.close();
+    }
+
+    @Test
+    public void testColorGaugesInSingleMode() throws InvalidProtocolBufferException {
+        // colors are only interned with batching
+        PartitionedQueue queue = new PartitionedQueue(2, true, true);
+        ConfQueue expected = new ConfQueue(true, true);
+        ConfQueue empty = new ConfQueue(true, true);
+        queue.init(Clock.eclock(2));
+        expected.init(Clock.eclock(2));
+        empty.init(Clock.eclock(2));
+        Message a = Generator.message("a");
+        Message b = Generator.message("b");
+        Message ab = a.toBuilder().addAllHashes(b.getHashesList()).build();
+
+        // all wait for 0.1, the second interns the color of the first in
+        // its partition, and the third is in several partitions
+        Commit c1 = new Commit(new Dot(0, 2L), a, new VClock(new long[]{1L, 0L}));
+        Commit c2 = new Commit(new Dot(0, 3L), a, new VClock(new long[]{2L, 0L}));
+        Commit c3 = new Commit(new Dot(1, 1L), ab, new VClock(new long[]{3L, 0L}));
+        for (Commit commit : Arrays.asList(c1, c2, c3)) {
+            queue.add(commit.getDot(), commit.getMessage(), commit.getConf());
+            expected.add(commit.getDot(), commit.getMessage(), commit.getConf());
+        }
+        assertTrue(queue.drainDeliverable().isEmpty());
+        expected.drainDeliverable();
+
+        // the colors of the single queue, and the empty tables of the
+        // partitions
+        assertEquals(2, queue.colors());
+        assertEquals(expected.colors(), queue.colors());
+        assertEquals(expected.colorFootprint() + 2 * empty.colorFootprint(), queue.colorFootprint());
+
+        // once delivered, partitioned again
+        queue.add(new Dot(0, 1L), a, new VClock(new long[]{0L, 0L}));
+        assertEquals(4, queue.drainDeliverable().size());
+        assertEquals(0, queue.colors());
+        assertEquals(2 * empty.colorFootprint(), queue.colorFootprint());
+        queue.close();
+    }
+
+    @Test
+    public void testGaugesFromOtherThread() throws Exception {
+        PartitionedQueue queue = new PartitionedQueue(2, false, true);
+        Message a = Generator.message("a");
+        Message b = Generator.message("b");
+        Message ab = a.toBuilder().addAllHashes(b.getHashesList()).build();
+
+        // the gauges are read (as by the metrics reporter) while the queue
+        // moves to a single queue and back
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread reporter = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    assertTrue(queue.colors() >= 0);
+                    assertTrue(queue.colorFootprint() >= 0);
+                    double rate = queue.fastPathRate();
+                    assertTrue(rate >= 0 && rate <= 1);
+                }
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        reporter.start();
+
+        queue.init(Clock.eclock(2));
+        for (long seq = 1; seq <= 20000; seq++) {
+            Message message = seq % 3 == 0 ? ab : (seq % 3 == 1 ? a : b);
+            queue.add(new Dot(0, seq), message, new VClock(new long[]{seq - 1, 0L}));
+            queue.drainDeliverable();
+        }
+        done.set(true);
+        reporter.join();
+        queue.close();
+        assertNull(error.get());
+        assertEquals(0, queue.elements());
+    }
+
+    @Test
+    public void testBatches() throws InvalidProtocolBufferException {
+        Random random = new Random(1);
+        for (int i = 0; i < 10; i++) {
+            CommitTrace trace = CommitTrace.generate(5000, 3, 16, 4, random);
+            Map<String, List<Dot>> expected = trace.perColor(trace.replay(new ConfQueue(false, true)));
+
+            // drained once per batch, so that the partitions run in parallel
+            CommitTrace shuffled = trace.delay(200, random);
+            PartitionedQueue queue = new PartitionedQueue(4, false, true);
+            queue.init(shuffled.getCommitted());
+            List<ConfQueueBox> result = new ArrayList<>();
+            int batch = 1 + random.nextInt(500);
+            for (int j = 0; j < shuffled.getCommits().size(); j++) {
+                Commit commit = shuffled.getCommits().get(j);
+                queue.add(commit.getDot(), commit.getMessage(), commit.getConf());
+                if (j % batch == 0) {
+                    result.addAll(queue.drainDeliverable());
+                }
+            }
+            result.addAll(queue.drainDeliverable());
+            assertEquals(0, queue.elements());
+            queue.close();
+
+            assertEquals(expected, trace.perColor(result));
+        }
+    }
+
+    @Test
+    public void testNoOptDelivery() throws InvalidProtocolBufferException {
+        Random random = new Random(2);
+        for (int i = 0; i < 10; i++) {
+            CommitTrace trace = CommitTrace.generate(2000, 3, 16, 4, random).shuffle(random);
+
+            // every dot in conf is a dependency, so the boxes are the ones
+            // of a single queue
+            ConfQueue single = new ConfQueue(false, false);
+            List<ConfQueueBox> expected = trace.replay(single);
+            PartitionedQueue queue = new PartitionedQueue(4, false, false);
+            List<ConfQueueBox> result = trace.replay(queue);
+            queue.close();
+            assertEquals(single.fastPathRate(), queue.fastPathRate(), 0);
+
+            assertEquals(expected.size(), result.size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.get(j).getDots(), result.get(j).getDots());
+            }
+        }
+    }
+}
@@ -82,4 +82,32 @@ public class ClockTest {
         // r2 = []
         assertTrue(r2.isEmpty());
     }
+
+    @Test
+    public void testVClock() {
+        HashMap<Integer, Long> a = new HashMap<>();
+        a.put(0, 7L);
+        a.put(1, 5L);
+        VClock clockA = VClock.vclock(a);
+        VClock clockB = new VClock(5L, 6L);
+
+        // same as the generic clock
+        assertEquals(clockA, new VClock(Clock.vclock(a)));
+        assertEquals(Clock.vclock(a), clockA.toClock());
+        assertEquals(Clock.vclock(a).frontier(), clockA.frontier());
+        assertEquals(Clock.vclock(a).nextDots(), clockA.nextDots());
+
+        assertTrue(clockA.contains(new Dot(0, 7L)));
+        assertFalse(clockA.contains(new Dot(0, 8L)));
+
+        // r = [(0, 6), (0, 7)]
+        Dots r = clockA.subtract(clockB);
+        assertTrue(r.contains(new Dot(0, 6L)));
+        assertTrue(r.contains(new Dot(0, 7L)));
+        assertEquals(r.size(), 2);
+
+        clockA.merge(clockB);
+        assertEquals(new VClock(7L, 6L), clockA);
+        assertTrue(clockB.subtractIsBottom(clockA));
+    }
 }
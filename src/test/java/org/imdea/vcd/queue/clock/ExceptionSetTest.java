@@ -3,6 +3,8 @@ package org.imdea.vcd.queue.clock;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -71,4 +73,106 @@ public class ExceptionSetTest {
         assertTrue(r2.contains(1L));
         assertEquals(r2.size(), 1);
     }
+
+    @Test
+    public void testPrevious() {
+        ExceptionSet a = new ExceptionSet(10L, new HashSet<>(Arrays.asList(1L, 2L, 4L, 5L, 6L)));
+        assertEquals(10L, a.previous(12L));
+        assertEquals(7L, a.previous(7L));
+        assertEquals(3L, a.previous(6L));
+        assertEquals(3L, a.previous(4L));
+        assertEquals(0L, a.previous(2L));
+    }
+
+    @Test
+    public void testPreviousMissing() {
+        ExceptionSet a = new ExceptionSet(10L, new HashSet<>(Arrays.asList(1L, 2L, 4L, 5L, 6L)));
+        assertEquals(12L, a.previousMissing(12L));
+        assertEquals(6L, a.previousMissing(10L));
+        assertEquals(6L, a.previousMissing(7L));
+        assertEquals(5L, a.previousMissing(5L));
+        assertEquals(2L, a.previousMissing(3L));
+        assertEquals(1L, a.previousMissing(1L));
+
+        ExceptionSet b = new ExceptionSet(10L);
+        assertEquals(0L, b.previousMissing(10L));
+        assertEquals(11L, b.previousMissing(11L));
+    }
+
+    @Test
+    public void testJump() {
+        ExceptionSet a = new ExceptionSet();
+        a.add(100000L);
+        assertEquals(1, a.rangeCount());
+        assertEquals(1L, a.next());
+        assertFalse(a.containsAll(100000L));
+
+        a.add(1L);
+        a.add(50000L);
+        assertEquals(2, a.rangeCount());
+        assertEquals(2L, a.next());
+        assertTrue(a.contains(50000L));
+        assertFalse(a.contains(49999L));
+        assertFalse(a.contains(50001L));
+    }
+
+    @Test
+    public void testRandom() {
+        // compare with the set of seqs it should contain
+        Random random = new Random(0);
+        for (int it = 0; it < 1000; it++) {
+            ExceptionSet a = new ExceptionSet();
+            ExceptionSet b = new ExceptionSet();
+            TreeSet<Long> sa = new TreeSet<>();
+            TreeSet<Long> sb = new TreeSet<>();
+            for (int i = 0; i < 20; i++) {
+                long s = 1 + random.nextInt(50);
+                a.add(s);
+                sa.add(s);
+                s = 1 + random.nextInt(50);
+                b.add(s);
+                sb.add(s);
+            }
+
+            check(sa, a);
+            check(sb, b);
+
+            // subtract
+            TreeSet<Long> diff = new TreeSet<>(sa);
+            diff.removeAll(sb);
+            assertEquals(new TreeSet<>(a.subtract(b)), diff);
+            assertEquals(diff.isEmpty(), a.subtractIsBottom(b));
+
+            // merge
+            a.merge(b);
+            sa.addAll(sb);
+            check(sa, a);
+            assertEquals(a, new ExceptionSet(a.current(), a.getExceptions()));
+
+            // remove
+            for (int i = 0; i < 10; i++) {
+                long s = 1 + random.nextInt(50);
+                a.remove(s);
+                sa.remove(s);
+            }
+            check(sa, a);
+            assertEquals(a, new ExceptionSet(a.current(), a.getExceptions()));
+        }
+    }
+
+    private void check(TreeSet<Long> expected, ExceptionSet set) {
+        long max = expected.isEmpty() ? 0 : expected.last();
+        assertEquals(max, set.current());
+
+        long next = 1;
+        while (expected.contains(next)) {
+            next++;
+        }
+        assertEquals(next, set.next());
+
+        for (long s = 1; s <= max + 1; s++) {
+            assertEquals(expected.contains(s), set.contains(s));
+            assertEquals(s < next, set.containsAll(s));
+        }
+    }
 }
@@ -0,0 +1,109 @@
+package org.imdea.vcd.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Vitor Enes
+ */
+public class BatchPolicyTest {
+
+    private static final long WINDOW = 1000000L; // 1ms
+
+    @Test
+    public void testFull() {
+        BatchPolicy policy = new BatchPolicy(WINDOW, 10, 100, false);
+        assertFalse(policy.full(9, 99));
+        assertTrue(policy.full(10, 0));
+        assertTrue(policy.full(1, 100));
+    }
+
+    @Test
+    public void testFixed() {
+        BatchPolicy policy = new BatchPolicy(WINDOW, 10, 100, false);
+        policy.adapt(1, 0);
+        assertEquals(WINDOW, policy.window());
+    }
+
+    @Test
+    public void testAdaptive() {
+        BatchPolicy policy = new BatchPolicy(WINDOW, 10, 100, true);
+
+        // light load: narrows
+        policy.adapt(1, 0);
+        assertEquals(WINDOW / 2, policy.window());
+        for (int i = 0; i < 100; i++) {
+            policy.adapt(1, 0);
+        }
+        assertEquals(1000L, policy.window());
+
+        // batches over the target: widens, but never above the configured
+        // window
+        for (int i = 0; i < 100; i++) {
+            policy.adapt(2.5, 0);
+        }
+        assertEquals(WINDOW, policy.window());
+
+        // and stays below a fraction of the commit latency
+        policy.adapt(3, 2000000);
+        assertEquals(200000L, policy.window());
+    }
+
+    @Test
+    public void testNoWindow() {
+        // no batching window: adapting doesn't turn one on
+        BatchPolicy policy = new BatchPolicy(0, 10, 100, true);
+        for (double size : new double[]{1, 2, 5}) {
+            policy.adapt(size, 0);
+            assertEquals(0L, policy.window());
+            policy.adapt(size, 1000);
+            assertEquals(0L, policy.window());
+        }
+    }
+
+    @Test
+    public void testShortCommitLatency() {
+        // a tiny commit latency doesn't take the window below 1us
+        BatchPolicy policy = new BatchPolicy(WINDOW, 10, 100, true);
+        for (int i = 0; i < 100; i++) {
+            policy.adapt(3, 100);
+        }
+        assertEquals(1000L, policy.window());
+        policy.adapt(1, 0);
+        assertEquals(1000L, policy.window());
+    }
+
+    @Test
+    public void testChangingLoad() {
+        BatchPolicy policy = new BatchPolicy(WINDOW, 1000, 1000000, true);
+
+        // a message every 10us, then every 100us, then every 10us again:
+        // the window follows, and settles with batches of 3 messages
+        for (long interval : new long[]{10000L, 100000L, 10000L}) {
+            for (int i = 0; i < 20; i++) {
+                policy.adapt(batchSize(policy.window(), interval), 0);
+            }
+            for (int i = 0; i < 20; i++) {
+                double size = batchSize(policy.window(), interval);
+                assertEquals(3, size, 0.01);
+                policy.adapt(size, 0);
+            }
+        }
+
+        // a message every 2ms: the configured window would gather 1.5 per
+        // batch, so it narrows
+        for (int i = 0; i < 20; i++) {
+            policy.adapt(batchSize(policy.window(), 2000000L), 0);
+        }
+        assertEquals(1000L, policy.window());
+    }
+
+    /**
+     * Mean batch size, with a message every interval nanoseconds: the first
+     * one, and the ones during the window.
+     */
+    private static double batchSize(long window, long interval) {
+        return 1 + (double) window / interval;
+    }
+}
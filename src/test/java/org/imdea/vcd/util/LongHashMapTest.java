@@ -0,0 +1,86 @@
+package org.imdea.vcd.util;
+
+import java.util.HashMap;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Vitor Enes
+ */
+public class LongHashMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        LongHashMap<String> map = new LongHashMap<>();
+        assertTrue(map.isEmpty());
+
+        assertNull(map.put(1L, "a"));
+        assertNull(map.put(-7L, "b"));
+        assertEquals("a", map.put(1L, "c"));
+        assertEquals(2, map.size());
+        assertEquals("c", map.get(1L));
+        assertEquals("b", map.get(-7L));
+        assertNull(map.get(2L));
+
+        assertEquals("c", map.remove(1L));
+        assertNull(map.remove(1L));
+        assertFalse(map.containsKey(1L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testRandom() {
+        // compare with a HashMap, with few distinct keys so that
+        // there are many collisions and removals
+        Random random = new Random(0);
+        LongHashMap<Long> map = new LongHashMap<>();
+        HashMap<Long, Long> expected = new HashMap<>();
+
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(5000) << 20;
+            long value = random.nextLong();
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, value), map.put(key, value));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (long key = 0; key < 5000; key++) {
+            assertEquals(expected.get(key << 20), map.get(key << 20));
+        }
+    }
+
+    @Test
+    public void testSet() {
+        Random random = new Random(0);
+        LongHashSet set = new LongHashSet();
+        HashMap<Long, Boolean> expected = new HashMap<>();
+
+        for (int i = 0; i < 100000; i++) {
+            long key = random.nextInt(1000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, true) == null, set.add(key));
+            } else {
+                assertEquals(expected.remove(key) != null, set.remove(key));
+            }
+        }
+
+        int size = 0;
+        for (PrimitiveIterator.OfLong it = set.iterator(); it.hasNext();) {
+            assertTrue(expected.containsKey(it.nextLong()));
+            size++;
+        }
+        assertEquals(expected.size(), size);
+        assertEquals(set, new LongHashSet(set));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyKey() {
+        new LongHashMap<>().put(Long.MIN_VALUE, "a");
+    }
+}
@@ -0,0 +1,134 @@
+package org.imdea.vcd.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Vitor Enes
+ */
+public class SeqWindowTest {
+
+    @Test
+    public void testPutGetRemove() {
+        SeqWindow<String> window = new SeqWindow<>();
+        assertTrue(window.isEmpty());
+
+        assertNull(window.put(5L, "a"));
+        assertNull(window.put(3L, "b"));
+        assertEquals("a", window.put(5L, "c"));
+        assertEquals(2, window.size());
+        assertEquals("c", window.get(5L));
+        assertEquals("b", window.get(3L));
+        assertNull(window.get(4L));
+        assertNull(window.get(1000L));
+
+        // far from the others
+        assertNull(window.put(1000L, "d"));
+        assertEquals("d", window.get(1000L));
+        assertEquals("b", window.get(3L));
+
+        assertEquals("b", window.remove(3L));
+        assertNull(window.remove(3L));
+        assertNull(window.get(3L));
+        assertEquals(2, window.size());
+    }
+
+    @Test
+    public void testRandom() {
+        // compare with a TreeMap, with a window that moves forward
+        Random random = new Random(0);
+        SeqWindow<Long> window = new SeqWindow<>();
+        TreeMap<Long, Long> expected = new TreeMap<>();
+
+        long from = 1;
+        for (int i = 0; i < 200000; i++) {
+            long seq = from + random.nextInt(i % 1000 < 500 ? 50 : 5000);
+            if (random.nextInt(3) > 0) {
+                assertEquals(expected.put(seq, (long) i), window.put(seq, (long) i));
+            } else {
+                assertEquals(expected.remove(seq), window.remove(seq));
+            }
+            assertEquals(expected.size(), window.size());
+            if (random.nextInt(10) == 0) {
+                from++;
+            }
+        }
+
+        for (long seq = 0; seq < from + 5000; seq++) {
+            assertEquals(expected.get(seq), window.get(seq));
+        }
+        List<Long> values = new ArrayList<>();
+        window.forEachValue(values::add);
+        assertEquals(new ArrayList<>(expected.values()), values);
+    }
+
+    @Test
+    public void testStuckSeq() {
+        // a low seq stays while the others move far ahead: it's kept
+        // aside, and the ring doesn't grow past twice the maximum span
+        SeqWindow<Long> window = new SeqWindow<>(64);
+        window.put(1L, 1L);
+        for (long seq = 2; seq <= 100000; seq++) {
+            window.put(seq, seq);
+            if (seq > 11) {
+                assertEquals((Long) (seq - 10), window.remove(seq - 10));
+            }
+            assertTrue(window.capacity() <= 128);
+        }
+        assertEquals(11, window.size());
+        assertEquals((Long) 1L, window.get(1L));
+        assertNull(window.get(2L));
+
+        // seqs below the ring are stragglers too
+        assertNull(window.put(5L, 5L));
+        List<Long> values = new ArrayList<>();
+        window.forEachValue(values::add);
+        assertEquals(Arrays.asList(1L, 5L, 99991L, 99992L, 99993L, 99994L, 99995L, 99996L, 99997L, 99998L, 99999L, 100000L), values);
+
+        assertEquals((Long) 1L, window.remove(1L));
+        assertEquals((Long) 5L, window.remove(5L));
+        assertNull(window.remove(5L));
+        assertEquals(10, window.size());
+    }
+
+    @Test
+    public void testRandomSmallSpan() {
+        // as above, with seqs that often don't fit in the ring
+        Random random = new Random(0);
+        SeqWindow<Long> window = new SeqWindow<>(32);
+        TreeMap<Long, Long> expected = new TreeMap<>();
+
+        long from = 1;
+        for (int i = 0; i < 200000; i++) {
+            long seq = from + random.nextInt(i % 1000 < 500 ? 20 : 200);
+            if (random.nextInt(3) > 0) {
+                assertEquals(expected.put(seq, (long) i), window.put(seq, (long) i));
+            } else {
+                assertEquals(expected.remove(seq), window.remove(seq));
+            }
+            assertEquals(expected.size(), window.size());
+            assertTrue(window.capacity() <= 64);
+            if (random.nextInt(10) == 0) {
+                from++;
+            }
+            if (i % 10000 == 0) {
+                List<Long> values = new ArrayList<>();
+                window.forEachValue(values::add);
+                assertEquals(new ArrayList<>(expected.values()), values);
+            }
+        }
+
+        for (long seq = 0; seq < from + 200; seq++) {
+            assertEquals(expected.get(seq), window.get(seq));
+        }
+        List<Long> values = new ArrayList<>();
+        window.forEachValue(values::add);
+        assertEquals(new ArrayList<>(expected.values()), values);
+    }
+}
@@ -0,0 +1,121 @@
+package org.imdea.vcd.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Vitor Enes
+ */
+public class SpscRingBufferTest {
+
+    @Test
+    public void testCapacity() {
+        assertEquals(1, new SpscRingBuffer<>(1).capacity());
+        assertEquals(4, new SpscRingBuffer<>(3).capacity());
+        assertEquals(4, new SpscRingBuffer<>(4).capacity());
+        assertEquals(8, new SpscRingBuffer<>(5).capacity());
+    }
+
+    @Test
+    public void testOfferPoll() {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(4);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+
+        // go around the ring a few times
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(ring.offer(i));
+            }
+            assertFalse(ring.offer(4));
+            assertEquals(4, ring.size());
+
+            for (int i = 0; i < 4; i++) {
+                assertEquals((Integer) i, ring.poll());
+            }
+            assertNull(ring.poll());
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    @Test
+    public void testDrainTo() {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(8);
+        for (int i = 0; i < 6; i++) {
+            ring.offer(i);
+        }
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(4, ring.drainTo(drained, 4));
+        assertEquals(2, ring.drainTo(drained));
+        assertEquals(0, ring.drainTo(drained));
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals((Integer) i, drained.get(i));
+        }
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void testPutWaits() throws InterruptedException {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(1, new WaitStrategy.Blocking());
+        assertTrue(ring.offer(1));
+
+        Thread producer = new Thread(() -> {
+            try {
+                ring.put(2);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        producer.start();
+
+        // the ring is full: the producer parks (as the consumer would)
+        // instead of spinning, until a slot is freed
+        long deadline = System.currentTimeMillis() + 5000;
+        while (producer.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.TIMED_WAITING, producer.getState());
+        assertEquals((Integer) 1, ring.poll());
+        producer.join();
+        assertEquals((Integer) 2, ring.poll());
+    }
+
+    @Test
+    public void testTwoThreads() throws InterruptedException {
+        final int n = 100000;
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(64);
+
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < n; i++) {
+                    ring.put(i);
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        producer.start();
+
+        // elements are received once and in order
+        List<Integer> drained = new ArrayList<>();
+        int expected = 0;
+        while (expected < n) {
+            drained.clear();
+            if (ring.drainTo(drained) == 0) {
+                Thread.yield();
+            }
+            for (Integer e : drained) {
+                assertEquals((Integer) expected, e);
+                expected++;
+            }
+        }
+
+        producer.join();
+        assertTrue(ring.isEmpty());
+    }
+}
@@ -0,0 +1,97 @@
+package org.imdea.vcd.util;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Vitor Enes
+ */
+public class WaitStrategyTest {
+
+    @Test
+    public void testCreate() {
+        for (String name : new String[]{"blocking", "park", "yield", "spin"}) {
+            assertEquals(name, WaitStrategy.create(name).name());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateUnknown() {
+        WaitStrategy.create("sleep");
+    }
+
+    @Test
+    public void testBlockingWakesUp() throws InterruptedException {
+        WaitStrategy wait = WaitStrategy.create("blocking");
+        AtomicBoolean published = new AtomicBoolean();
+
+        Thread consumer = new Thread(() -> {
+            try {
+                int round = 0;
+                while (!published.get()) {
+                    wait.idle(round++, published::get);
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        consumer.start();
+
+        Thread.sleep(50);
+        published.set(true);
+        wait.signal();
+
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+    }
+
+    @Test
+    public void testBlockingWithoutSignal() throws InterruptedException {
+        WaitStrategy wait = WaitStrategy.create("blocking");
+        AtomicBoolean published = new AtomicBoolean();
+
+        Thread consumer = new Thread(() -> {
+            try {
+                int round = 0;
+                while (!published.get()) {
+                    wait.idle(round++, published::get);
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        consumer.start();
+
+        // the wake-up is lost: the consumer sees the work on its next check
+        Thread.sleep(50);
+        published.set(true);
+
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+    }
+
+    @Test
+    public void testInterrupt() throws InterruptedException {
+        WaitStrategy wait = WaitStrategy.create("blocking");
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int round = 0;; round++) {
+                    wait.idle(round, () -> false);
+                }
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        consumer.start();
+
+        Thread.sleep(50);
+        consumer.interrupt();
+
+        consumer.join(5000);
+        assertTrue(interrupted.get());
+    }
+}